@@ -10,10 +10,16 @@ import uk.humbkr.xtream2jellyfin.common.YamlUtils;
 import uk.humbkr.xtream2jellyfin.config.AppConfig;
 import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
 import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
+import uk.humbkr.xtream2jellyfin.scheduler.ProviderTask;
+import uk.humbkr.xtream2jellyfin.scheduler.StatusServer;
+import uk.humbkr.xtream2jellyfin.scheduler.SyncScheduler;
+import uk.humbkr.xtream2jellyfin.scheduler.SyncWindow;
 import uk.humbkr.xtream2jellyfin.streamhandler.XtreamProcessor;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,30 +51,74 @@ public class Xtream2JellyfinApp {
         log.info("Starting xtream2jellyfin");
 
         AppConfig appConfig = this.readConfig();
-        List<Thread> threads = new ArrayList<>();
+        GlobalSettings globalSettings = appConfig.getGlobalSettings();
+        List<ProviderTask> tasks = new ArrayList<>();
 
         for (XtreamProviderConfig providerConfig : appConfig.getProviders().values()) {
-            String providerName = providerConfig.getName();
-
-            Thread thread = new Thread(() -> processProviderStreams(providerConfig, appConfig.getGlobalSettings()));
-            thread.setName("provider-" + providerName);
-            threads.add(thread);
-            thread.start();
+            ProviderTask task = createProviderTask(providerConfig, globalSettings);
+            if (task != null) {
+                tasks.add(task);
+            }
         }
 
-        // Wait for all provider threads (they run indefinitely with scheduled intervals)
-        for (Thread thread : threads) {
-            try {
-                thread.join();
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("Interrupted while waiting for provider threads", e);
+        Duration stagger = Duration.ofSeconds(Math.max(0, globalSettings.getStaggerSeconds()));
+
+        try (SyncScheduler scheduler = new SyncScheduler(tasks, stagger)) {
+            if (globalSettings.isRunOnce()) {
+                scheduler.runOnce();
+            } else {
+                startStatusServer(scheduler, globalSettings.getStatusPort());
+                scheduler.start();
+                // Providers run indefinitely with scheduled intervals
+                scheduler.awaitTermination();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for provider syncs", e);
         }
 
         log.info("xtream2jellyfin stopped");
     }
 
+    private ProviderTask createProviderTask(XtreamProviderConfig config, GlobalSettings globalSettings) {
+        String providerName = config.getName();
+
+        List<SyncWindow> windows = new ArrayList<>();
+        try {
+            for (String window : config.getSchedule().getWindows()) {
+                windows.add(SyncWindow.parse(window));
+            }
+        } catch (IllegalArgumentException e) {
+            log.error("[{}] Failed to schedule provider: {}", providerName, e.getMessage());
+            return null;
+        }
+
+        XtreamProcessor processor = new XtreamProcessor(config, globalSettings);
+        if (!processor.isReady()) {
+            log.error("[{}] Failed to run, please set credentials", providerName);
+            return null;
+        }
+
+        return new ProviderTask(providerName, processor::sync,
+                Duration.ofMinutes(Math.max(1, config.getInterval())),
+                windows,
+                Duration.ofSeconds(Math.max(0, config.getSchedule().getJitterSeconds())),
+                ZoneId.systemDefault());
+    }
+
+    private void startStatusServer(SyncScheduler scheduler, int port) {
+        if (port <= 0) {
+            return;
+        }
+
+        try {
+            // Lives as long as the application, it is never closed
+            new StatusServer(scheduler, port).start();
+        } catch (IOException e) {
+            log.error("Failed to start status server on port {}: {}", port, e.getMessage());
+        }
+    }
+
     private AppConfig readConfig() {
         File configFile = new File(Constants.CONFIG_FILE);
         if (configFile.exists()) {
@@ -83,8 +133,4 @@ public class Xtream2JellyfinApp {
         return new AppConfig();
     }
 
-    private void processProviderStreams(XtreamProviderConfig config, GlobalSettings globalSettings) {
-        new XtreamProcessor(config, globalSettings).processStreams();
-    }
-
 }
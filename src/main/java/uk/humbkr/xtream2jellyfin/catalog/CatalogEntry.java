@@ -0,0 +1,158 @@
+package uk.humbkr.xtream2jellyfin.catalog;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * One entry of a provider stream list (live channel, movie or series).
+ * <p>
+ * Ids and timestamps are kept as primitives and scalar fields as (mostly shared) strings,
+ * nested fields are only available through the raw JSON, see {@link #toMap()}.
+ */
+public class CatalogEntry {
+
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper;
+
+    private final String[] keys;
+
+    // Scalar values as text, null for JSON null and for nested objects or arrays
+    private final String[] values;
+
+    private final boolean[] nested;
+
+    // The entry as compact JSON
+    private final byte[] raw;
+
+    @Getter
+    private final long fingerprint;
+
+    @Getter
+    private final long streamId;
+
+    @Getter
+    private final long seriesId;
+
+    @Getter
+    private final long added;
+
+    @Getter
+    private final long lastModified;
+
+    CatalogEntry(ObjectMapper objectMapper, String[] keys, String[] values, boolean[] nested, byte[] raw,
+                 long fingerprint) {
+        this.objectMapper = objectMapper;
+        this.keys = keys;
+        this.values = values;
+        this.nested = nested;
+        this.raw = raw;
+        this.fingerprint = fingerprint;
+        this.streamId = parseLong(get("stream_id"));
+        this.seriesId = parseLong(get("series_id"));
+        this.added = parseLong(get("added"));
+        this.lastModified = parseLong(get("last_modified"));
+    }
+
+    public String getName() {
+        return get("name");
+    }
+
+    public String getCategoryId() {
+        return get("category_id");
+    }
+
+    /**
+     * @return the text of a scalar field, null if the field is missing, null or not a scalar
+     */
+    public String get(String key) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * Same as {@link Map#getOrDefault}, a field that is present but null is returned as null.
+     */
+    public String getOrDefault(String key, String defaultValue) {
+        int index = indexOf(key);
+        return index >= 0 ? values[index] : defaultValue;
+    }
+
+    public boolean has(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Resolve a field, a dotted key such as "movie_data.tmdb_id" reads into nested objects.
+     */
+    public Object getValue(String key) {
+        int dot = key.indexOf('.');
+        int index = indexOf(dot < 0 ? key : key.substring(0, dot));
+        if (index < 0) {
+            return null;
+        }
+        if (!nested[index]) {
+            return dot < 0 ? values[index] : null;
+        }
+
+        Object current = toMap();
+        for (String part : key.split("\\.")) {
+            if (!(current instanceof Map<?, ?> map)) {
+                return null;
+            }
+            current = map.get(part);
+        }
+        return current;
+    }
+
+    /**
+     * Decode the whole entry, with its original field types, into a new mutable map.
+     */
+    public Map<String, Object> toMap() {
+        try {
+            return objectMapper.readValue(raw, MAP_TYPE);
+        } catch (IOException e) {
+            // The raw JSON was produced from an already parsed entry
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public byte[] getRaw() {
+        return raw;
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return MISSING;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return MISSING;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,149 @@
+package uk.humbkr.xtream2jellyfin.catalog;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.humbkr.xtream2jellyfin.common.HashUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads stream list entries into {@link CatalogEntry} instances.
+ * Not thread-safe, a reader is meant to read a single list.
+ */
+public class CatalogReader {
+
+    // Fields with few distinct values across a catalog, their values are shared between entries
+    private static final Set<String> DICTIONARY_FIELDS = Set.of(
+            "category_id", "container_extension", "stream_type", "rating", "rating_5based",
+            "is_adult", "tv_archive", "tv_archive_duration", "custom_sid", "direct_source"
+    );
+
+    // Position of the entry in the list, it shifts whenever an entry is added or removed before it
+    private static final String POSITION_FIELD = "num";
+
+    private static final int DICTIONARY_SIZE = 16 * 1024;
+
+    private final ObjectMapper objectMapper;
+
+    private final JsonFactory jsonFactory;
+
+    private final StringDictionary dictionary = new StringDictionary(DICTIONARY_SIZE);
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(4096);
+
+    private final List<String> keys = new ArrayList<>();
+
+    private final List<String> values = new ArrayList<>();
+
+    private final List<Boolean> nested = new ArrayList<>();
+
+    public CatalogReader(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.jsonFactory = objectMapper.getFactory();
+    }
+
+    /**
+     * Read the object the parser is positioned on, the parser is left on its closing token.
+     */
+    public CatalogEntry read(JsonParser parser) throws IOException {
+        buffer.reset();
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return read(buffer.toByteArray());
+    }
+
+    /**
+     * Read an entry from its JSON object.
+     */
+    public CatalogEntry read(byte[] raw) throws IOException {
+        keys.clear();
+        values.clear();
+        nested.clear();
+        long fingerprint = HashUtils.INITIAL_HASH;
+
+        try (JsonParser parser = jsonFactory.createParser(raw)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Expected a JSON object but got: " + parser.currentToken());
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = dictionary.intern(parser.currentName());
+                JsonToken token = parser.nextToken();
+                boolean fingerprinted = !POSITION_FIELD.equals(key);
+
+                if (fingerprinted) {
+                    fingerprint = HashUtils.update(fingerprint, key);
+                }
+
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    if (fingerprinted) {
+                        fingerprint = hashStructure(parser, fingerprint);
+                    } else {
+                        parser.skipChildren();
+                    }
+                    add(key, null, true);
+                    continue;
+                }
+
+                String value = token == JsonToken.VALUE_NULL ? null : parser.getText();
+                if (DICTIONARY_FIELDS.contains(key)) {
+                    value = dictionary.intern(value);
+                }
+                if (fingerprinted) {
+                    // The token type tells a number from a string with the same text
+                    fingerprint = HashUtils.update(fingerprint, token.name());
+                    fingerprint = HashUtils.update(fingerprint, value);
+                }
+                add(key, value, false);
+            }
+        }
+
+        boolean[] nestedFlags = new boolean[nested.size()];
+        for (int i = 0; i < nestedFlags.length; i++) {
+            nestedFlags[i] = nested.get(i);
+        }
+
+        return new CatalogEntry(objectMapper, keys.toArray(new String[0]), values.toArray(new String[0]),
+                nestedFlags, raw, fingerprint);
+    }
+
+    private void add(String key, String value, boolean isNested) {
+        keys.add(key);
+        values.add(value);
+        nested.add(isNested);
+    }
+
+    private long hashStructure(JsonParser parser, long hash) throws IOException {
+        int depth = 1;
+        hash = HashUtils.update(hash, parser.currentToken().name());
+
+        while (depth > 0) {
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                throw new IOException("Unexpected end of entry");
+            }
+            if (token.isStructStart()) {
+                depth++;
+            } else if (token.isStructEnd()) {
+                depth--;
+            }
+            hash = HashUtils.update(hash, token.name());
+            if (token == JsonToken.FIELD_NAME) {
+                hash = HashUtils.update(hash, parser.currentName());
+            } else if (token.isScalarValue()) {
+                hash = HashUtils.update(hash, parser.getText());
+            }
+        }
+
+        return hash;
+    }
+
+}
@@ -0,0 +1,43 @@
+package uk.humbkr.xtream2jellyfin.catalog;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates low-cardinality strings, such as field names or category ids, so that entries share a single instance.
+ * Not thread-safe, a dictionary belongs to a single reader.
+ */
+public class StringDictionary {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    private final int maxSize;
+
+    /**
+     * @param maxSize number of distinct values kept, further values are returned as is
+     */
+    public StringDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+
+        String existing = values.get(value);
+        if (existing != null) {
+            return existing;
+        }
+
+        if (values.size() < maxSize) {
+            values.put(value, value);
+        }
+        return value;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+}
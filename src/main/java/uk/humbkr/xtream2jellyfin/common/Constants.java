@@ -22,6 +22,22 @@ public class Constants {
 
     public static final boolean USE_CACHE = false;
 
+    // Movie and series folder/file names
+    public static final String DEFAULT_NAME_TEMPLATE = "${name} (${year}) [${externalProviderId}-${externalId}]";
+
+    // Provider Requests
+    public static final int REQUEST_ATTEMPTS = 3;
+
+    public static final long RETRY_BASE_DELAY_MS = 1000;
+
+    // Processing Pipeline
+    public static final int PIPELINE_QUEUE_SIZE = 256;
+
+    public static final int PIPELINE_WRITE_THREADS = 4;
+
+    // Stale File Cleanup
+    public static final int STALE_DELETE_THREADS = 8;
+
     // Context Parameters
     public static final Map<XtreamAction, String> CONTEXT_PARAMETER = Map.of(
             XtreamAction.SERIES_INFO, "series_id",
@@ -36,9 +52,8 @@ public class Constants {
 
     public static final String MEDIA_RESOLVER_INFO = "info";
 
-    // Load Data Actions
+    // Load Data Actions (streams are not preloaded, they are streamed item by item)
     public static final String[] LOAD_DATA_ACTIONS = {
-            MEDIA_RESOLVER_STREAMS,
             MEDIA_RESOLVER_CATEGORIES
     };
 
@@ -69,7 +84,8 @@ public class Constants {
 
     public static final Map<String, String> HEADERS = Map.of(
             "Upgrade-Insecure-Requests", "1",
-            "User-Agent", DEFAULT_USER_AGENT
+            "User-Agent", DEFAULT_USER_AGENT,
+            "Accept-Encoding", "gzip, deflate"
     );
 
     private Constants() {
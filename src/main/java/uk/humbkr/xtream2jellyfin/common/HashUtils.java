@@ -0,0 +1,68 @@
+package uk.humbkr.xtream2jellyfin.common;
+
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cheap non-cryptographic 64-bit hashing (FNV-1a), used to fingerprint content between runs.
+ */
+@NoArgsConstructor(access = lombok.AccessLevel.PRIVATE)
+public final class HashUtils {
+
+    public static final long INITIAL_HASH = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Separates consecutive values so that "ab" + "c" and "a" + "bc" hash differently
+    private static final char SEPARATOR = '\u0000';
+
+    public static long hash64(CharSequence value) {
+        return update(INITIAL_HASH, value);
+    }
+
+    public static long update(long hash, CharSequence value) {
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+            }
+        }
+        return (hash ^ SEPARATOR) * FNV_PRIME;
+    }
+
+    public static long update(long hash, byte[] value, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ (value[i] & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Hash a value parsed from JSON, nested maps and lists included, in iteration order.
+     */
+    public static long update(long hash, Object value) {
+        if (value instanceof Map<?, ?> map) {
+            hash = update(hash, "{");
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                hash = update(hash, String.valueOf(entry.getKey()));
+                hash = update(hash, entry.getValue());
+            }
+            return update(hash, "}");
+        }
+        if (value instanceof List<?> list) {
+            hash = update(hash, "[");
+            for (Object item : list) {
+                hash = update(hash, item);
+            }
+            return update(hash, "]");
+        }
+        return update(hash, value != null ? value.toString() : null);
+    }
+
+    public static String toHex(long hash) {
+        String hex = Long.toHexString(hash);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+
+}
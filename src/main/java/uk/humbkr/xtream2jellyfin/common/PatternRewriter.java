@@ -0,0 +1,264 @@
+package uk.humbkr.xtream2jellyfin.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Regex replacements compiled once and applied in order, with the same result as calling
+ * {@link String#replaceAll} for each of them in turn.
+ * <p>
+ * Most configured cleanup patterns only match a few names. For each pattern, a literal that every match must contain
+ * is extracted when possible, and the pattern is skipped without running the regex when the text does not contain it.
+ * Replacements are written back and forth between two buffers, so only the final text is turned into a String.
+ * Thread-safe.
+ */
+public final class PatternRewriter {
+
+    private static final PatternRewriter EMPTY = new PatternRewriter(List.of());
+
+    private record Rule(String regex, Pattern pattern, String replacement, String requiredLiteral) {
+    }
+
+    private final List<Rule> rules;
+
+    private PatternRewriter(List<Rule> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * @param patterns replacement of each regex, applied in the iteration order of the map
+     */
+    public static PatternRewriter compile(Map<String, String> patterns) {
+        if (patterns == null || patterns.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<Rule> rules = new ArrayList<>(patterns.size());
+        for (Map.Entry<String, String> entry : patterns.entrySet()) {
+            String regex = entry.getKey();
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                // Fails when applied, as it did when patterns were compiled on first use
+                pattern = null;
+            }
+            String requiredLiteral = pattern != null ? requiredLiteral(regex) : null;
+            rules.add(new Rule(regex, pattern, entry.getValue(), requiredLiteral));
+        }
+        return new PatternRewriter(List.copyOf(rules));
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * @return the patterns without a required literal, which are run on every text
+     */
+    public List<String> getUnfilteredPatterns() {
+        List<String> unfiltered = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule.requiredLiteral == null) {
+                unfiltered.add(rule.regex);
+            }
+        }
+        return unfiltered;
+    }
+
+    /**
+     * @throws PatternSyntaxException if one of the patterns is not a valid regex
+     */
+    public String apply(String text) {
+        CharSequence current = text;
+        StringBuilder first = null;
+        StringBuilder second = null;
+
+        for (Rule rule : rules) {
+            if (rule.pattern == null) {
+                Pattern.compile(rule.regex);
+            }
+            if (rule.requiredLiteral != null && indexOf(current, rule.requiredLiteral) < 0) {
+                continue;
+            }
+
+            Matcher matcher = rule.pattern.matcher(current);
+            if (!matcher.find()) {
+                continue;
+            }
+
+            if (first == null) {
+                first = new StringBuilder(current.length() + 16);
+                second = new StringBuilder(current.length() + 16);
+            }
+            StringBuilder target = current == first ? second : first;
+            target.setLength(0);
+            do {
+                matcher.appendReplacement(target, rule.replacement);
+            } while (matcher.find());
+            matcher.appendTail(target);
+            current = target;
+        }
+
+        return current == text ? text : current.toString();
+    }
+
+    private static int indexOf(CharSequence text, String literal) {
+        return text instanceof String string ? string.indexOf(literal) : ((StringBuilder) text).indexOf(literal);
+    }
+
+    /**
+     * Find a literal that every match of the regex contains, looking only at the top level of the regex:
+     * groups, character classes and quantified characters end a literal run.
+     *
+     * @return the longest such literal, null if there is none or the regex uses constructs that are not handled
+     * (alternation, inline flags, quoting, escapes taking arguments)
+     */
+    static String requiredLiteral(String regex) {
+        String best = null;
+        StringBuilder run = new StringBuilder();
+        boolean lastLiteral = false;
+        int i = 0;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            boolean literal = false;
+
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 >= regex.length()) {
+                        return null;
+                    }
+                    char escaped = regex.charAt(i + 1);
+                    if (!Character.isLetterOrDigit(escaped)) {
+                        run.append(escaped);
+                        literal = true;
+                    } else if ("dDsSwWbBhHvVAzZGRX".indexOf(escaped) < 0) {
+                        // \x41, \p{L}, \Q...\E, back references, and other escapes taking arguments
+                        return null;
+                    }
+                    i += 2;
+                }
+                case '[' -> {
+                    i = skipClass(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                }
+                case '(' -> {
+                    if (i + 2 < regex.length() && regex.charAt(i + 1) == '?'
+                            && (Character.isLetter(regex.charAt(i + 2)) || regex.charAt(i + 2) == '-')) {
+                        // Inline flags such as (?i) change how the following literals match
+                        return null;
+                    }
+                    i = skipGroup(regex, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                }
+                case '|' -> {
+                    return null;
+                }
+                case '*', '+', '?', '{' -> {
+                    // The quantified character may be missing or repeated, it ends the run without being part of it
+                    if (lastLiteral) {
+                        run.setLength(run.length() - 1);
+                    }
+                    i = c == '{' ? regex.indexOf('}', i) + 1 : i + 1;
+                    if (i == 0) {
+                        return null;
+                    }
+                    if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+                        // Lazy or possessive quantifier
+                        i++;
+                    }
+                }
+                case '.', '^', '$' -> i++;
+                default -> {
+                    run.append(c);
+                    literal = true;
+                    i++;
+                }
+            }
+
+            if (!literal) {
+                best = longest(best, run);
+                run.setLength(0);
+            }
+            lastLiteral = literal;
+        }
+
+        return longest(best, run);
+    }
+
+    private static String longest(String best, StringBuilder run) {
+        if (run.isEmpty() || (best != null && best.length() >= run.length())) {
+            return best;
+        }
+        return run.toString();
+    }
+
+    /**
+     * @return the index after the character class starting at the given index, -1 if it is not closed
+     */
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            // A leading ']' is part of the class
+            i++;
+        }
+
+        int depth = 1;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index after the group starting at the given index, -1 if it is not closed
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+}
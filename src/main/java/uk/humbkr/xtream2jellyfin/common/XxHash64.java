@@ -0,0 +1,158 @@
+package uk.humbkr.xtream2jellyfin.common;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * XXH64, a fast non-cryptographic 64-bit hash, usable in one shot or fed incrementally.
+ * Not thread-safe.
+ */
+public final class XxHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final long seed;
+
+    private final byte[] stripe = new byte[32];
+
+    private int stripeSize;
+
+    private long totalLength;
+
+    private long v1;
+
+    private long v2;
+
+    private long v3;
+
+    private long v4;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    public static long hash(byte[] data, int offset, int length) {
+        XxHash64 hash = new XxHash64();
+        hash.update(data, offset, length);
+        return hash.getValue();
+    }
+
+    public static long hash(byte[] data) {
+        return hash(data, 0, data.length);
+    }
+
+    public void reset() {
+        v1 = seed + PRIME1 + PRIME2;
+        v2 = seed + PRIME2;
+        v3 = seed;
+        v4 = seed - PRIME1;
+        stripeSize = 0;
+        totalLength = 0;
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+
+        // Complete a stripe left over from a previous update
+        if (stripeSize > 0) {
+            int count = Math.min(32 - stripeSize, length);
+            System.arraycopy(data, offset, stripe, stripeSize, count);
+            stripeSize += count;
+            offset += count;
+            if (stripeSize < 32) {
+                return;
+            }
+            processStripe(stripe, 0);
+            stripeSize = 0;
+        }
+
+        while (end - offset >= 32) {
+            processStripe(data, offset);
+            offset += 32;
+        }
+
+        if (offset < end) {
+            System.arraycopy(data, offset, stripe, 0, end - offset);
+            stripeSize = end - offset;
+        }
+    }
+
+    public long getValue() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME5;
+        }
+
+        hash += totalLength;
+
+        int offset = 0;
+        while (stripeSize - offset >= 8) {
+            hash ^= round(0, (long) LONG_LE.get(stripe, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            offset += 8;
+        }
+
+        if (stripeSize - offset >= 4) {
+            hash ^= ((int) INT_LE.get(stripe, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+
+        while (offset < stripeSize) {
+            hash ^= (stripe[offset] & 0xFFL) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            offset++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void processStripe(byte[] data, int offset) {
+        v1 = round(v1, (long) LONG_LE.get(data, offset));
+        v2 = round(v2, (long) LONG_LE.get(data, offset + 8));
+        v3 = round(v3, (long) LONG_LE.get(data, offset + 16));
+        v4 = round(v4, (long) LONG_LE.get(data, offset + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME1;
+    }
+
+    private static long mergeRound(long accumulator, long value) {
+        accumulator ^= round(0, value);
+        return accumulator * PRIME1 + PRIME4;
+    }
+
+}
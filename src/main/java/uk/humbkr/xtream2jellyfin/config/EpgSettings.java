@@ -0,0 +1,21 @@
+package uk.humbkr.xtream2jellyfin.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class EpgSettings {
+
+    // Keep only the guide of the channels written to the playlist
+    @JsonProperty("filter_channels")
+    private boolean filterChannels = true;
+
+    // Programmes that ended more than this many hours ago are dropped, 0 keeps them all
+    @JsonProperty("past_hours")
+    private int pastHours = 0;
+
+    // Programmes starting more than this many hours ahead are dropped, 0 keeps them all
+    @JsonProperty("future_hours")
+    private int futureHours = 0;
+
+}
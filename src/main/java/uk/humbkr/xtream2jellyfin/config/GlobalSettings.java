@@ -18,10 +18,28 @@ public class GlobalSettings {
     @JsonProperty("cache_dir")
     private String cacheDir = "cache";
 
+    // Simple file manager only: update the media directory in place instead of wiping it every run
+    @JsonProperty("simple_diff_sync")
+    private boolean simpleDiffSync = false;
+
     @JsonProperty("write_metadata_json")
     private boolean writeMetadataJson = false;
 
     @JsonProperty("write_metadata_nfo")
     private boolean writeMetadataNfo = true;
 
+    @JsonProperty("concurrent_handlers")
+    private boolean concurrentHandlers = false;
+
+    @JsonProperty("write_behind")
+    private WriteBehindConfig writeBehind = new WriteBehindConfig();
+
+    // Delay between the first runs of consecutive providers, in seconds
+    @JsonProperty("stagger_seconds")
+    private int staggerSeconds = 60;
+
+    // Port of the scheduler status endpoint, 0 disables it
+    @JsonProperty("status_port")
+    private int statusPort = 0;
+
 }
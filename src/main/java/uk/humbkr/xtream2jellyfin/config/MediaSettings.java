@@ -2,6 +2,7 @@ package uk.humbkr.xtream2jellyfin.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
+import uk.humbkr.xtream2jellyfin.common.Constants;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -19,6 +20,10 @@ public class MediaSettings {
     @JsonProperty("use_server_info")
     private boolean useServerInfo = false;
 
+    // Template of movie and series names, not used by live streams
+    @JsonProperty("name_template")
+    private String nameTemplate = Constants.DEFAULT_NAME_TEMPLATE;
+
     @JsonProperty("name_cleanup_patterns")
     private Map<String, String> nameCleanupPatterns = new HashMap<>();
 
@@ -27,4 +32,7 @@ public class MediaSettings {
 
     @JsonProperty("exclude_category_ids")
     private List<String> excludeCategoryIds = new ArrayList<>();
+
+    // Guide settings, only used by live streams
+    private EpgSettings epg = new EpgSettings();
 }
@@ -0,0 +1,32 @@
+package uk.humbkr.xtream2jellyfin.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class RateLimitConfig {
+
+    private boolean enabled = true;
+
+    // Requests per second
+    @JsonProperty("initial_rate")
+    private double initialRate = 10;
+
+    @JsonProperty("min_rate")
+    private double minRate = 0.5;
+
+    @JsonProperty("max_rate")
+    private double maxRate = 50;
+
+    // Requests that can be sent back to back after an idle period
+    private double burst = 5;
+
+    // Requests per second added after each healthy response
+    @JsonProperty("increase_step")
+    private double increaseStep = 0.1;
+
+    // Rate multiplier applied when the provider throttles
+    @JsonProperty("decrease_factor")
+    private double decreaseFactor = 0.5;
+
+}
@@ -0,0 +1,19 @@
+package uk.humbkr.xtream2jellyfin.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ScheduleConfig {
+
+    // Time windows syncs may start in, such as "01:00-06:00" or "sat,sun 08:00-12:00", empty allows any time
+    private List<String> windows = new ArrayList<>();
+
+    // Random delay added to each run, in seconds
+    @JsonProperty("jitter_seconds")
+    private int jitterSeconds = 0;
+
+}
@@ -0,0 +1,22 @@
+package uk.humbkr.xtream2jellyfin.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Data;
+
+@Data
+public class WriteBehindConfig {
+
+    private boolean enabled = false;
+
+    // Directories written at the same time
+    private int threads = 4;
+
+    // Files waiting to be written before saving blocks
+    @JsonProperty("max_pending")
+    private int maxPending = 10000;
+
+    // Files synced to disk together, 0 leaves syncing to the operating system
+    @JsonProperty("fsync_batch_size")
+    private int fsyncBatchSize = 0;
+
+}
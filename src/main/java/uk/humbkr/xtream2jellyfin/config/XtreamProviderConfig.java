@@ -22,6 +22,15 @@ public class XtreamProviderConfig {
 
     private int interval = Constants.DEFAULT_SCAN_INTERVAL;
 
+    private ScheduleConfig schedule = new ScheduleConfig();
+
+    // Concurrent API calls, 0 uses the max_connections reported by the provider
+    @JsonProperty("max_connections")
+    private int maxConnections = 0;
+
+    @JsonProperty("rate_limit")
+    private RateLimitConfig rateLimit = new RateLimitConfig();
+
     @JsonProperty("category_name_cleanup_patterns")
     private Map<String, String> categoryNameCleanupPatterns = new HashMap<>();
 
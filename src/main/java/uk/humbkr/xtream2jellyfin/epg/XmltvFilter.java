@@ -0,0 +1,251 @@
+package uk.humbkr.xtream2jellyfin.epg;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.Set;
+
+/**
+ * Streams an XMLTV guide while dropping the channels and programmes that are not wanted.
+ * Elements are copied one event at a time, memory does not depend on the size of the guide.
+ */
+@Slf4j
+public class XmltvFilter {
+
+    private static final DateTimeFormatter XMLTV_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMddHHmmss[ Z]");
+
+    private static final byte[] XML_DECLARATION = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n".getBytes(StandardCharsets.UTF_8);
+
+    private static final QName ID = new QName("id");
+
+    private static final QName CHANNEL = new QName("channel");
+
+    private static final QName START = new QName("start");
+
+    private static final QName STOP = new QName("stop");
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+    private final Set<String> channelIds;
+
+    private final Instant windowStart;
+
+    private final Instant windowEnd;
+
+    @Getter
+    private int channelsKept;
+
+    @Getter
+    private int channelsDropped;
+
+    @Getter
+    private int programmesKept;
+
+    @Getter
+    private int programmesDropped;
+
+    /**
+     * @param channelIds  ids of the channels to keep, null keeps every channel
+     * @param windowStart programmes ending before this instant are dropped, null for no limit
+     * @param windowEnd   programmes starting after this instant are dropped, null for no limit
+     */
+    public XmltvFilter(Set<String> channelIds, Instant windowStart, Instant windowEnd) {
+        this.channelIds = channelIds;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+    }
+
+    public boolean isPassThrough() {
+        return channelIds == null && windowStart == null && windowEnd == null;
+    }
+
+    /**
+     * Copy the guide read from the input to the output, the output is written as UTF-8.
+     */
+    public void filter(InputStream in, OutputStream out) throws IOException {
+        if (isPassThrough()) {
+            in.transferTo(out);
+            return;
+        }
+
+        XMLEventReader reader = null;
+        XMLEventWriter writer = null;
+        try {
+            reader = INPUT_FACTORY.createXMLEventReader(in);
+
+            // The declaration is written as is, the guide is always re-encoded as UTF-8
+            out.write(XML_DECLARATION);
+            writer = OUTPUT_FACTORY.createXMLEventWriter(out, "UTF-8");
+
+            int depth = 0;
+            // Indentation preceding a child of the root, only written if that child is kept
+            XMLEvent pendingWhitespace = null;
+
+            while (reader.hasNext()) {
+                XMLEvent event = reader.nextEvent();
+
+                if (event.isStartDocument()) {
+                    continue;
+                }
+                if (event.isEndDocument()) {
+                    writer.add(EVENT_FACTORY.createCharacters("\n"));
+                    break;
+                }
+
+                if (depth == 1 && event.isCharacters() && event.asCharacters().isWhiteSpace()) {
+                    pendingWhitespace = event;
+                    continue;
+                }
+
+                if (event.isStartElement()) {
+                    // Channels and programmes are direct children of the root <tv> element
+                    if (depth == 1 && !keep(event.asStartElement())) {
+                        skipElement(reader);
+                        continue;
+                    }
+                    depth++;
+                } else if (event.isEndElement()) {
+                    depth--;
+                }
+
+                if (pendingWhitespace != null) {
+                    writer.add(pendingWhitespace);
+                    pendingWhitespace = null;
+                }
+                writer.add(event);
+            }
+
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException("Failed to filter XMLTV guide: " + e.getMessage(), e);
+        } finally {
+            close(reader, writer);
+        }
+    }
+
+    private boolean keep(StartElement element) {
+        String name = element.getName().getLocalPart();
+
+        if ("channel".equals(name)) {
+            boolean keep = isWantedChannel(attributeValue(element, ID));
+            if (keep) {
+                channelsKept++;
+            } else {
+                channelsDropped++;
+            }
+            return keep;
+        }
+
+        if ("programme".equals(name)) {
+            boolean keep = isWantedChannel(attributeValue(element, CHANNEL)) && isInWindow(element);
+            if (keep) {
+                programmesKept++;
+            } else {
+                programmesDropped++;
+            }
+            return keep;
+        }
+
+        return true;
+    }
+
+    private boolean isWantedChannel(String channelId) {
+        return channelIds == null || (channelId != null && channelIds.contains(channelId));
+    }
+
+    private boolean isInWindow(StartElement programme) {
+        Instant start = parseDate(attributeValue(programme, START));
+        Instant stop = parseDate(attributeValue(programme, STOP));
+        if (stop == null) {
+            stop = start;
+        }
+
+        if (windowStart != null && stop != null && stop.isBefore(windowStart)) {
+            return false;
+        }
+        return windowEnd == null || start == null || !start.isAfter(windowEnd);
+    }
+
+    static Instant parseDate(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+
+        try {
+            TemporalAccessor parsed = XMLTV_DATE_FORMAT.parse(value.trim());
+            if (parsed.isSupported(ChronoField.OFFSET_SECONDS)) {
+                return OffsetDateTime.from(parsed).toInstant();
+            }
+            // Dates without an offset are UTC according to the XMLTV DTD
+            return LocalDateTime.from(parsed).toInstant(ZoneOffset.UTC);
+        } catch (DateTimeParseException e) {
+            log.debug("Unsupported XMLTV date: {}", value);
+            return null;
+        }
+    }
+
+    private static String attributeValue(StartElement element, QName name) {
+        Attribute attribute = element.getAttributeByName(name);
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    private static void skipElement(XMLEventReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && reader.hasNext()) {
+            XMLEvent event = reader.nextEvent();
+            if (event.isStartElement()) {
+                depth++;
+            } else if (event.isEndElement()) {
+                depth--;
+            }
+        }
+    }
+
+    private static void close(XMLEventReader reader, XMLEventWriter writer) {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            log.debug("Failed to close XMLTV streams", e);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        // The guide comes from a remote server, never resolve DTDs or external entities
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+}
@@ -1,17 +1,170 @@
 package uk.humbkr.xtream2jellyfin.filemanager;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.AccessLevel;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import uk.humbkr.xtream2jellyfin.common.JsonUtils;
+import uk.humbkr.xtream2jellyfin.common.XxHash64;
 
-@RequiredArgsConstructor(access = AccessLevel.PROTECTED)
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+@Slf4j
 public class BaseFileManager {
 
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ContentBuffer> CONTENT_BUFFER = ThreadLocal.withInitial(ContentBuffer::new);
+
     protected final ObjectMapper objectMapper = JsonUtils.initializeJsonMapper();
 
-    @NonNull
     protected final String rootDir;
 
+    // Null when files are written synchronously
+    private final WriteBehindWriter writeBehind;
+
+    // Directories known to exist during the current run, deleting one must invalidate it
+    protected final DirectoryCache directories;
+
+    protected BaseFileManager(@NonNull String rootDir) {
+        this(rootDir, null);
+    }
+
+    protected BaseFileManager(@NonNull String rootDir, WriteBehindWriter writeBehind) {
+        this.rootDir = rootDir;
+        this.writeBehind = writeBehind;
+        this.directories = writeBehind != null ? writeBehind.getDirectories() : new DirectoryCache();
+    }
+
+    /**
+     * Replace a file with the given content, in the background when write-behind is enabled.
+     * Failures are logged here.
+     *
+     * @param onWritten      notified once the file is written, may be null
+     * @param failureHandler notified if the file could not be written, may be null
+     */
+    protected void writeFile(String path, byte[] content, Runnable onWritten,
+                             WriteBehindWriter.FailureHandler failureHandler) {
+        if (writeBehind != null) {
+            writeBehind.write(path, content, onWritten, failureHandler);
+            return;
+        }
+
+        try {
+            Path filePath = Paths.get(path);
+            directories.prepare(filePath.getParent());
+
+            log.debug("Writing file: {}", path);
+            Files.write(filePath, content);
+        } catch (IOException e) {
+            log.error("Failed to save file: {}", path, e);
+            if (failureHandler != null) {
+                failureHandler.onFailure(path, e);
+            }
+            return;
+        }
+
+        if (onWritten != null) {
+            onWritten.run();
+        }
+    }
+
+    /**
+     * Wait for the files queued by {@link #writeFile} to be written.
+     */
+    public void flush() {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+    }
+
+    protected static void notifySaved(FileManager.SaveListener listener, String path, boolean saved) {
+        if (listener != null) {
+            listener.onSaveDone(path, saved);
+        }
+    }
+
+    /**
+     * Whether content is written to its file as is, rather than as JSON.
+     */
+    protected boolean isRawContent(String path, Object content) {
+        return content instanceof String && !path.endsWith(".json");
+    }
+
+    /**
+     * Serialize content as JSON into a buffer reused by the next call on the same thread.
+     */
+    protected ContentBuffer serializeJson(Object content) throws IOException {
+        ContentBuffer buffer = CONTENT_BUFFER.get();
+        if (buffer.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+            // Do not keep a large buffer around for the rare large file
+            buffer = new ContentBuffer();
+            CONTENT_BUFFER.set(buffer);
+        }
+        buffer.reset();
+        objectMapper.writeValue(buffer, content);
+        return buffer;
+    }
+
+    /**
+     * Write content to a temporary file next to its target, so it can later be moved into place atomically.
+     *
+     * @param hash updated with the written bytes, may be null
+     */
+    protected Path writeTempFile(Path filePath, ContentWriter writer, XxHash64 hash) throws IOException {
+        directories.prepare(filePath.getParent());
+        Path tempPath = Files.createTempFile(filePath.getParent(), "." + filePath.getFileName(), ".tmp");
+
+        try (OutputStream out = openTempFile(tempPath, hash)) {
+            writer.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+
+        return tempPath;
+    }
+
+    protected void moveIntoPlace(Path tempPath, Path filePath) throws IOException {
+        try {
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private OutputStream openTempFile(Path tempPath, XxHash64 hash) throws IOException {
+        OutputStream out = Files.newOutputStream(tempPath);
+        if (hash != null) {
+            out = new HashingOutputStream(out, hash);
+        }
+        return new BufferedOutputStream(out, 64 * 1024);
+    }
+
+    /**
+     * Byte buffer giving access to its content without copying it.
+     */
+    protected static class ContentBuffer extends ByteArrayOutputStream {
+
+        ContentBuffer() {
+            super(8 * 1024);
+        }
+
+        public byte[] array() {
+            return buf;
+        }
+
+        public int capacity() {
+            return buf.length;
+        }
+
+    }
+
 }
@@ -2,224 +2,311 @@ package uk.humbkr.xtream2jellyfin.filemanager;
 
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.common.Constants;
+import uk.humbkr.xtream2jellyfin.common.HashUtils;
+import uk.humbkr.xtream2jellyfin.common.XxHash64;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 public class CachedFileManager extends BaseFileManager implements FileManager {
 
-    private final String filesDbPath;
+    // Length of the hex MD5 hashes written by previous versions, current hashes are 64-bit
+    private static final int LEGACY_HASH_LENGTH = 32;
 
-    private Map<String, Map<String, String>> filesDb;
+    private final FilesDb filesDb;
 
-    // Stale file tracking
-    private Set<String> trackedFiles;
-
-    private Set<String> staleFiles;
+    private final LongAdder migratedHashes = new LongAdder();
 
     public CachedFileManager(String rootDir, @NonNull String cacheDir) {
-        super(rootDir);
-        this.filesDbPath = cacheDir + "/files.json";
-        this.filesDb = new HashMap<>();
-        this.trackedFiles = new HashSet<>();
-        this.staleFiles = new HashSet<>();
+        this(rootDir, cacheDir, null);
+    }
+
+    public CachedFileManager(String rootDir, @NonNull String cacheDir, WriteBehindWriter writeBehind) {
+        super(rootDir, writeBehind);
+        this.filesDb = new FilesDb(cacheDir);
     }
 
     @Override
     public void initialize() {
         // Load existing database
-        Object fileDb = FileManagerUtils.get(filesDbPath, null);
-        if (fileDb != null) {
-            try {
-                @SuppressWarnings("unchecked")
-                Map<String, Map<String, String>> db = (Map<String, Map<String, String>>) fileDb;
-                this.filesDb = db;
-            } catch (ClassCastException e) {
-                log.warn("Failed to cast files db, initializing empty db", e);
-                this.filesDb = new HashMap<>();
-            }
-        }
+        filesDb.load();
+        directories.clear();
 
-        // Initialize stale file tracking
         // Mark all previously known files as potentially stale
-        this.staleFiles = new HashSet<>(filesDb.keySet());
-        this.trackedFiles = new HashSet<>();
+        filesDb.markAllStale();
 
         log.debug("Loaded {} files from cache database, {} marked as potentially stale",
-                filesDb.size(), staleFiles.size());
+                filesDb.size(), filesDb.staleCount());
     }
 
     @Override
     public void complete() {
-        // Clean up stale files first
-        cleanupStaleFiles();
+        // Queued writes may still fail and change the database
+        flush();
 
-        // Update database to contain only files from current run
-        Map<String, Map<String, String>> updatedDb = new HashMap<>();
-        for (String trackedFile : trackedFiles) {
-            if (filesDb.containsKey(trackedFile)) {
-                updatedDb.put(trackedFile, filesDb.get(trackedFile));
-            }
+        long migrated = migratedHashes.sumThenReset();
+        if (migrated > 0) {
+            log.info("Migrated {} unchanged file hashes from MD5", migrated);
         }
-        this.filesDb = updatedDb;
-
-        // Save updated database
-        try {
-            Path path = Paths.get(filesDbPath);
-            FileManagerUtils.prepareDirectory(path.getParent().toString());
 
-            String json = objectMapper.writeValueAsString(filesDb);
-            Files.writeString(path, json, StandardCharsets.UTF_8);
+        // Update database to contain only files from current run
+        List<String> staleFiles = filesDb.removeStale();
 
+        // Save the changes of this run before deleting stale files, a deleted file must never stay tracked
+        try {
+            filesDb.commit();
             log.debug("Saved {} files to cache database", filesDb.size());
+
+            cleanupStaleFiles(staleFiles);
         } catch (IOException e) {
-            log.error("Failed to update database", e);
+            log.error("Failed to update database, stale files are kept", e);
         }
 
-        // Reset tracking sets for next run
-        trackedFiles.clear();
-        staleFiles.clear();
-        filesDb = new HashMap<>();
+        // Release the database until the next run
+        filesDb.clear();
+        directories.clear();
     }
 
     @Override
-    public void save(String path, Object content, String date) {
+    public void save(String path, Object content, String date, SaveListener listener) {
         // Mark file as active in current run
-        trackedFiles.add(path);
-        staleFiles.remove(path);
+        filesDb.keep(path);
 
         try {
-            String contentStr = objectMapper.writeValueAsString(content);
-            byte[] contentBytes = contentStr.getBytes(StandardCharsets.UTF_8);
-            String contentHash = md5Hash(contentBytes);
-
-            Map<String, String> fileHistory = filesDb.getOrDefault(path, new HashMap<>());
-            String itemHash = fileHistory.get("hash");
-
-            if (!contentHash.equals(itemHash)) {
-                Path filePath = Paths.get(path);
-                FileManagerUtils.prepareDirectory(filePath.getParent().toString());
-
-                String fileContent;
-                if (path.endsWith(".json")) {
-                    fileContent = objectMapper.writeValueAsString(content);
-                } else {
-                    if (content instanceof String) {
-                        fileContent = (String) content;
-                    } else {
-                        fileContent = objectMapper.writeValueAsString(content);
-                    }
-                }
+            // Content is encoded once, Strings such as URLs, NFO and playlists are written as is
+            byte[] contentBytes;
+            int contentLength;
+            ContentBuffer buffer = null;
+            if (isRawContent(path, content)) {
+                contentBytes = ((String) content).getBytes(StandardCharsets.UTF_8);
+                contentLength = contentBytes.length;
+            } else {
+                buffer = serializeJson(content);
+                contentBytes = buffer.array();
+                contentLength = buffer.size();
+            }
+
+            String contentHash = HashUtils.toHex(XxHash64.hash(contentBytes, 0, contentLength));
+
+            FilesDb.Entry fileHistory = filesDb.get(path);
+            String itemHash = fileHistory != null ? fileHistory.hash() : null;
 
-                log.debug("Writing file: {}", path);
-                Files.writeString(filePath, fileContent, StandardCharsets.UTF_8);
+            if (contentHash.equals(itemHash)) {
+                notifySaved(listener, path, true);
+                return;
+            }
 
-                Map<String, String> metadata = new HashMap<>();
-                metadata.put("hash", contentHash);
-                metadata.put("added", date);
-                filesDb.put(path, metadata);
+            if (isLegacyHash(itemHash) && itemHash.equals(legacyHash(content, buffer))) {
+                // Unchanged since a run that used MD5, only the hash needs updating
+                filesDb.put(path, new FilesDb.Entry(contentHash, fileHistory.added()));
+                migratedHashes.increment();
+                notifySaved(listener, path, true);
+                return;
             }
+
+            FilesDb.Entry metadata = new FilesDb.Entry(contentHash, date);
+            FilesDb.Entry previousMetadata = filesDb.stage(path, metadata);
+
+            byte[] fileBytes = buffer != null ? buffer.toByteArray() : contentBytes;
+
+            // The entry is journaled once the file is written, a failed write restores the previous entry
+            // so the file is written again next run
+            writeFile(path, fileBytes, () -> {
+                filesDb.written(path, metadata);
+                notifySaved(listener, path, true);
+            }, (failedPath, e) -> {
+                filesDb.restore(failedPath, metadata, previousMetadata);
+                notifySaved(listener, failedPath, false);
+            });
         } catch (IOException e) {
             log.error("Failed to save file: {}", path, e);
+            notifySaved(listener, path, false);
         }
     }
 
-    private void cleanupStaleFiles() {
+    @Override
+    public void saveStream(String path, ContentWriter writer, String date) throws IOException {
+        // Mark file as active in current run, a failed write keeps the previous file
+        filesDb.keep(path);
+
+        XxHash64 hash = new XxHash64();
+        Path filePath = Paths.get(path);
+        Path tempPath = writeTempFile(filePath, writer, hash);
+
+        try {
+            String contentHash = HashUtils.toHex(hash.getValue());
+
+            FilesDb.Entry fileHistory = filesDb.get(path);
+            String itemHash = fileHistory != null ? fileHistory.hash() : null;
+
+            if (contentHash.equals(itemHash) && Files.exists(filePath)) {
+                log.debug("File unchanged: {}", path);
+                return;
+            }
+
+            log.debug("Writing file: {}", path);
+            moveIntoPlace(tempPath, filePath);
+
+            filesDb.put(path, new FilesDb.Entry(contentHash, date));
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    @Override
+    public boolean retain(String path) {
+        int retainedCount = filesDb.keepUnder(path);
+
+        log.debug("Retained {} files from {}", retainedCount, path);
+        // Nothing tracked, e.g. a lost or new database, the output must be written again
+        return retainedCount > 0;
+    }
+
+    @Override
+    public boolean retain(Collection<String> paths) {
+        if (!filesDb.keepAll(paths)) {
+            log.debug("Files not all tracked, cannot be retained: {}", paths);
+            return false;
+        }
+        return true;
+    }
+
+    private void cleanupStaleFiles(List<String> staleFiles) {
         if (staleFiles.isEmpty()) {
             return;
         }
 
-        int deletedCount = 0;
-        int failedCount = 0;
+        LongAdder deletedCount = new LongAdder();
+        LongAdder failedCount = new LongAdder();
+        // Directories that may have been left empty
+        Set<Path> touchedDirectories = ConcurrentHashMap.newKeySet();
 
         log.info("Cleaning up {} stale files...", staleFiles.size());
 
-        for (String stalePath : staleFiles) {
-            try {
-                Path file = Paths.get(stalePath);
-                if (Files.exists(file)) {
-                    Files.delete(file);
-                    deletedCount++;
-                    log.debug("Deleted stale file: {}", stalePath);
-                } else {
-                    log.debug("Stale file already missing: {}", stalePath);
-                }
-            } catch (IOException e) {
-                failedCount++;
-                log.warn("Failed to delete stale file: {}", stalePath, e);
+        try (ExecutorService pool = Executors.newFixedThreadPool(Constants.STALE_DELETE_THREADS,
+                Thread.ofPlatform().name("stale-delete-", 0).daemon(true).factory())) {
+            for (String stalePath : staleFiles) {
+                pool.execute(() -> {
+                    Path file = Paths.get(stalePath).toAbsolutePath().normalize();
+                    try {
+                        if (Files.deleteIfExists(file)) {
+                            deletedCount.increment();
+                            log.debug("Deleted stale file: {}", stalePath);
+                        } else {
+                            log.debug("Stale file already missing: {}", stalePath);
+                        }
+                        if (file.getParent() != null) {
+                            touchedDirectories.add(file.getParent());
+                        }
+                    } catch (IOException e) {
+                        failedCount.increment();
+                        log.warn("Failed to delete stale file: {}", stalePath, e);
+                    }
+                });
             }
         }
 
-        if (deletedCount > 0) {
-            log.info("Successfully deleted {} stale files", deletedCount);
+        if (deletedCount.sum() > 0) {
+            log.info("Successfully deleted {} stale files", deletedCount.sum());
         }
-        if (failedCount > 0) {
-            log.warn("Failed to delete {} stale files", failedCount);
+        if (failedCount.sum() > 0) {
+            log.warn("Failed to delete {} stale files", failedCount.sum());
         }
 
-        // Clean up empty directories
-        cleanupEmptyDirectories();
+        // Clean up the directories emptied by the deletions
+        cleanupEmptyDirectories(touchedDirectories);
     }
 
-    private void cleanupEmptyDirectories() {
-        try {
-            Path rootPath = Paths.get(rootDir);
-            if (!Files.exists(rootPath)) {
-                return;
-            }
-
-            // Walk the directory tree and collect directories in reverse depth order
-            // This ensures we process child directories before parent directories
-            Files.walk(rootPath)
-                    .filter(Files::isDirectory)
-                    .filter(path -> !path.equals(rootPath)) // Don't delete the root directory
-                    .sorted((p1, p2) -> Integer.compare(p2.getNameCount(), p1.getNameCount()))
-                    .forEach(this::deleteIfEmpty);
+    private void cleanupEmptyDirectories(Set<Path> directories) {
+        Path rootPath = Paths.get(rootDir).toAbsolutePath().normalize();
+        int deletedCount = 0;
 
-        } catch (IOException e) {
-            log.warn("Failed to cleanup empty directories", e);
+        // Each directory is pruned upward until a non-empty one, so the order does not matter:
+        // the last deletion under a shared parent removes it
+        for (Path directory : directories) {
+            Path current = directory;
+            // Don't delete the root directory
+            while (current != null && current.startsWith(rootPath) && !current.equals(rootPath)) {
+                if (!deleteIfEmpty(current)) {
+                    break;
+                }
+                deletedCount++;
+                current = current.getParent();
+            }
         }
+
+        log.debug("Deleted {} empty directories", deletedCount);
     }
 
-    private void deleteIfEmpty(Path directory) {
+    /**
+     * @return true if the directory was empty and is now deleted
+     */
+    private boolean deleteIfEmpty(Path directory) {
         try {
-            // Check if directory is empty
-            try (var stream = Files.list(directory)) {
-                if (stream.findFirst().isEmpty()) {
-                    Files.delete(directory);
-                    log.debug("Deleted empty directory: {}", directory);
-                }
-            }
+            // Deleting a directory that still has entries fails, no need to list it first
+            Files.delete(directory);
+            directories.invalidate(directory);
+            log.debug("Deleted empty directory: {}", directory);
+            return true;
+        } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+            // Still in use, or already pruned along with its parents
+            return false;
         } catch (IOException e) {
             log.debug("Could not delete directory: {}", directory, e);
+            return false;
+        }
+    }
+
+    private boolean isLegacyHash(String hash) {
+        return hash != null && hash.length() == LEGACY_HASH_LENGTH;
+    }
+
+    /**
+     * MD5 of the content as hashed by previous versions, which always serialized it as JSON, Strings included.
+     */
+    private String legacyHash(Object content, ContentBuffer buffer) throws IOException {
+        MessageDigest digest = md5Digest();
+        if (buffer != null) {
+            digest.update(buffer.array(), 0, buffer.size());
+        } else {
+            digest.update(objectMapper.writeValueAsBytes(content));
         }
+        return toHex(digest.digest());
     }
 
-    private String md5Hash(byte[] content) {
+    private MessageDigest md5Digest() {
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hash = md.digest(content);
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
+            return MessageDigest.getInstance("MD5");
         } catch (NoSuchAlgorithmException e) {
-            log.error("MD5 algorithm not found", e);
-            return "";
+            // Every Java platform is required to support MD5
+            throw new IllegalStateException("MD5 algorithm not found", e);
+        }
+    }
+
+    private String toHex(byte[] hash) {
+        StringBuilder hexString = new StringBuilder();
+        for (byte b : hash) {
+            String hex = Integer.toHexString(0xff & b);
+            if (hex.length() == 1) hexString.append('0');
+            hexString.append(hex);
         }
+        return hexString.toString();
     }
 
 }
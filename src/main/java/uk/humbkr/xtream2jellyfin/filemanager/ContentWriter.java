@@ -0,0 +1,14 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Produces the content of a file directly into its output stream, see {@link FileManager#saveStream}.
+ */
+@FunctionalInterface
+public interface ContentWriter {
+
+    void writeTo(OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,67 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Directories known to exist during a run, so that saving many files to the same directory
+ * only checks or creates it once.
+ * <p>
+ * Directories are assumed to stay in place until {@link #invalidate} or {@link #clear()} is called,
+ * the code deleting directories must report it.
+ */
+@Slf4j
+public class DirectoryCache {
+
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Make sure a directory exists, creating it and its parents if needed. Failures are logged here.
+     */
+    public void prepare(Path directory) {
+        Path key = directory.toAbsolutePath().normalize();
+        if (directories.contains(key)) {
+            return;
+        }
+
+        misses.increment();
+        try {
+            Files.createDirectories(key);
+        } catch (IOException e) {
+            log.error("Failed to create directory: {}", directory, e);
+            return;
+        }
+
+        // Creating a directory creates its parents, they are known to exist as well
+        Path current = key;
+        while (current != null && directories.add(current)) {
+            current = current.getParent();
+        }
+    }
+
+    /**
+     * Forget a directory that was deleted.
+     */
+    public void invalidate(Path directory) {
+        directories.remove(directory.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Forget every directory, at the end of a run or after deleting a whole tree.
+     */
+    public void clear() {
+        if (misses.sum() > 0) {
+            log.debug("Checked {} directories on disk, {} known", misses.sumThenReset(), directories.size());
+        }
+        directories.clear();
+    }
+
+}
@@ -1,11 +1,69 @@
 package uk.humbkr.xtream2jellyfin.filemanager;
 
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Writes the media files of a provider and keeps track of the ones that are still current.
+ * <p>
+ * Between {@link #initialize()} and {@link #complete()}, files may be saved and retained from several threads at once,
+ * as long as a given path is only written by one of them.
+ */
 public interface FileManager {
 
+    /**
+     * Notified once a saved file is on disk, or could not be written.
+     */
+    @FunctionalInterface
+    interface SaveListener {
+
+        /**
+         * @param saved true if the file was written or already had the content, false if it could not be written
+         */
+        void onSaveDone(String path, boolean saved);
+
+    }
+
     void initialize();
 
     void complete();
 
-    void save(String path, Object content, String date);
+    default void save(String path, Object content, String date) {
+        save(path, content, date, null);
+    }
+
+    /**
+     * Save content, the file may be written in the background.
+     *
+     * @param listener notified once the file is written, possibly from another thread, may be null
+     */
+    void save(String path, Object content, String date, SaveListener listener);
+
+    /**
+     * Wait until the files saved so far are written and their listeners notified.
+     */
+    void flush();
+
+    /**
+     * Save content produced by a writer without holding it in memory.
+     * The file is only replaced once the content has been completely written.
+     *
+     * @throws IOException if the content could not be written, the previous file is then left untouched
+     */
+    void saveStream(String path, ContentWriter writer, String date) throws IOException;
+
+    /**
+     * Keep a file, or the files written under a directory, by the previous run, as if they had been saved again.
+     *
+     * @return false if previous files are not tracked, in which case they must be saved again
+     */
+    boolean retain(String path);
+
+    /**
+     * Keep a set of files written by the previous run, as if they had been saved again.
+     *
+     * @return false if any of the files is not tracked, in which case they must all be saved again
+     */
+    boolean retain(Collection<String> paths);
 
 }
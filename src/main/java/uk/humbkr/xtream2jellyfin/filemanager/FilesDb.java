@@ -0,0 +1,783 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.common.HashUtils;
+import uk.humbkr.xtream2jellyfin.common.JsonUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Hash and date of every file written by a {@link CachedFileManager}, persisted as an append-only binary log.
+ * <p>
+ * Changes are journaled while a run goes: once enough of them are pending, or some time has passed,
+ * they are appended to the log and synced to disk. A run interrupted by a crash therefore keeps the entries of
+ * the files it already wrote. The log is rewritten as a snapshot on commit once it holds many more records
+ * than live entries. Loading maps the log in memory and replays it.
+ * <p>
+ * In memory, paths are held by a {@link PathIndex} and entries by primitive columns indexed by its slots,
+ * which takes a fraction of the heap of path Strings in hash maps. The same slots keep track of the entries
+ * that the current run has not kept yet.
+ * <p>
+ * The log starts with a header, then each record is a type byte followed by length-prefixed UTF-8 strings:
+ * the path, and for a put the hash and the date. Each record ends with the CRC32 of its bytes, the log is cut
+ * at the first incomplete or damaged record, such as one torn by a crash while it was appended.
+ */
+@Slf4j
+public class FilesDb {
+
+    public record Entry(String hash, String added) {
+    }
+
+    private static final byte[] MAGIC = "X2JFDB".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int HEADER_SIZE = MAGIC.length + 1;
+
+    // Version 1 records had no checksum
+    private static final byte VERSION_NO_CRC = 1;
+
+    private static final byte VERSION = 2;
+
+    private static final byte RECORD_PUT = 1;
+
+    private static final byte RECORD_DELETE = 2;
+
+    // Removal marker in the pending changes
+    private static final Entry DELETED = new Entry(null, null);
+
+    // The log is compacted once it holds this many times more records than live entries
+    private static final int COMPACTION_RATIO = 2;
+
+    private static final int MIN_COMPACTION_RECORDS = 10000;
+
+    // Pending changes are journaled once there are this many of them, or once the interval has passed
+    private static final int CHECKPOINT_RECORDS = 1000;
+
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Path dbPath;
+
+    private final Path legacyJsonPath;
+
+    // Guards the index, the columns and the bit sets below
+    private final ReentrantReadWriteLock dataLock = new ReentrantReadWriteLock();
+
+    private PathIndex index = new PathIndex();
+
+    // Per index slot: hashes and dates in their usual formats are stored as numbers, others as strings
+    private long[] hashes = new long[0];
+
+    private long[] addedSeconds = new long[0];
+
+    private int[] addedNanos = new int[0];
+
+    private final BitSet numericHash = new BitSet();
+
+    private final BitSet numericAdded = new BitSet();
+
+    private final Map<Integer, String> otherHashes = new HashMap<>();
+
+    private final Map<Integer, String> otherAdded = new HashMap<>();
+
+    // Slots holding an entry
+    private final BitSet live = new BitSet();
+
+    // Slots loaded from the previous run and not kept by the current one yet
+    private final BitSet stale = new BitSet();
+
+    private int liveCount = 0;
+
+    // Changes not written to the log yet, in no particular order since each path holds its latest state
+    private final Map<String, Entry> pending = new ConcurrentHashMap<>();
+
+    // Guards the log file and the record count
+    private final ReentrantLock logLock = new ReentrantLock();
+
+    private long logRecords = 0;
+
+    private volatile long lastCheckpoint = System.nanoTime();
+
+    public FilesDb(String cacheDir) {
+        this.dbPath = Paths.get(cacheDir, "files.db");
+        this.legacyJsonPath = Paths.get(cacheDir, "files.json");
+    }
+
+    /**
+     * Replace the in-memory entries with the persisted ones, including the changes journaled by an interrupted run.
+     */
+    public void load() {
+        logLock.lock();
+        dataLock.writeLock().lock();
+        try {
+            reset();
+            pending.clear();
+            logRecords = 0;
+            lastCheckpoint = System.nanoTime();
+
+            if (Files.exists(dbPath)) {
+                readLog();
+            } else if (Files.exists(legacyJsonPath)) {
+                migrateJson();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to load files database, starting empty: {}", dbPath, e);
+            reset();
+            logRecords = 0;
+        } finally {
+            dataLock.writeLock().unlock();
+            logLock.unlock();
+        }
+    }
+
+    public Entry get(String path) {
+        dataLock.readLock().lock();
+        try {
+            return entry(index.find(path));
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String path) {
+        return get(path) != null;
+    }
+
+    public int size() {
+        dataLock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Set the entry of a file already on disk, it is journaled with the next checkpoint.
+     *
+     * @return the previous entry of the path, null if there was none
+     */
+    public Entry put(String path, Entry entry) {
+        Entry previous = stage(path, entry);
+        changed(path, entry);
+        return previous;
+    }
+
+    /**
+     * Set the entry of a file still being written, it is only journaled once {@link #written} confirms the write.
+     *
+     * @return the previous entry of the path, null if there was none
+     */
+    public Entry stage(String path, Entry entry) {
+        dataLock.writeLock().lock();
+        try {
+            return set(path, entry);
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Confirm that the file of a staged entry is written, unless the path was changed again since.
+     */
+    public void written(String path, Entry entry) {
+        if (entry.equals(get(path))) {
+            changed(path, entry);
+        }
+    }
+
+    public void remove(String path) {
+        Entry previous;
+        dataLock.writeLock().lock();
+        try {
+            previous = set(path, null);
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+        if (previous != null) {
+            changed(path, DELETED);
+        }
+    }
+
+    /**
+     * Put back the previous entry of a path after its staged entry could not be written,
+     * unless it was changed again since.
+     *
+     * @param previous the entry to restore, null to remove the path
+     */
+    public void restore(String path, Entry expected, Entry previous) {
+        // The staged entry was never journaled, the log still holds the previous one
+        dataLock.writeLock().lock();
+        try {
+            if (expected.equals(entry(index.find(path)))) {
+                set(path, previous);
+            }
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Consider every entry stale until the current run keeps it, called when a run starts.
+     */
+    public void markAllStale() {
+        dataLock.writeLock().lock();
+        try {
+            stale.clear();
+            stale.or(live);
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    public int staleCount() {
+        dataLock.readLock().lock();
+        try {
+            return stale.cardinality();
+        } finally {
+            dataLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Keep a file for the current run, whether or not it has an entry.
+     */
+    public void keep(String path) {
+        dataLock.writeLock().lock();
+        try {
+            int slot = index.find(path);
+            if (slot >= 0) {
+                stale.clear(slot);
+            }
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Keep a file, or every file under a directory, for the current run.
+     *
+     * @return the number of entries kept
+     */
+    public int keepUnder(String path) {
+        dataLock.writeLock().lock();
+        try {
+            int[] kept = {0};
+            index.forEachUnder(path, slot -> {
+                if (live.get(slot)) {
+                    stale.clear(slot);
+                    kept[0]++;
+                }
+            });
+            return kept[0];
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Keep a set of files for the current run, only if they all have an entry.
+     *
+     * @return false if any of them has no entry, none is kept then
+     */
+    public boolean keepAll(Collection<String> paths) {
+        dataLock.writeLock().lock();
+        try {
+            int[] slots = new int[paths.size()];
+            int i = 0;
+            for (String path : paths) {
+                int slot = index.find(path);
+                if (slot < 0 || !live.get(slot)) {
+                    return false;
+                }
+                slots[i++] = slot;
+            }
+            for (int slot : slots) {
+                stale.clear(slot);
+            }
+            return true;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the entries not kept by the current run, the removals are persisted by the next commit.
+     *
+     * @return the paths of the removed entries
+     */
+    public List<String> removeStale() {
+        dataLock.writeLock().lock();
+        try {
+            List<String> removed = new ArrayList<>(stale.cardinality());
+            for (int slot = stale.nextSetBit(0); slot >= 0; slot = stale.nextSetBit(slot + 1)) {
+                if (live.get(slot)) {
+                    String path = index.path(slot);
+                    unset(slot);
+                    pending.put(path, DELETED);
+                    removed.add(path);
+                }
+            }
+            stale.clear();
+            return removed;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append the pending changes to the log and sync it.
+     */
+    public void checkpoint() throws IOException {
+        logLock.lock();
+        try {
+            appendPending();
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Persist the pending changes, or a compacted snapshot when the log has grown too large.
+     * No staged entry may be waiting for its write, the snapshot would persist it.
+     */
+    public void commit() throws IOException {
+        logLock.lock();
+        try {
+            long records = logRecords + pending.size();
+            if (Files.exists(dbPath) && records > Math.max(MIN_COMPACTION_RECORDS, (long) size() * COMPACTION_RATIO)) {
+                writeSnapshot();
+                pending.clear();
+            } else {
+                appendPending();
+            }
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    /**
+     * Release the in-memory entries, {@link #load()} must be called before using the database again.
+     */
+    public void clear() {
+        dataLock.writeLock().lock();
+        try {
+            reset();
+            pending.clear();
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called with the data write lock held.
+     */
+    private void reset() {
+        index = new PathIndex();
+        hashes = new long[0];
+        addedSeconds = new long[0];
+        addedNanos = new int[0];
+        numericHash.clear();
+        numericAdded.clear();
+        otherHashes.clear();
+        otherAdded.clear();
+        live.clear();
+        stale.clear();
+        liveCount = 0;
+    }
+
+    /**
+     * Set or remove the entry of a path, must be called with the data write lock held.
+     *
+     * @param entry null to remove the entry
+     * @return the previous entry of the path, null if there was none
+     */
+    private Entry set(String path, Entry entry) {
+        if (entry == null || entry == DELETED) {
+            int slot = index.find(path);
+            Entry previous = entry(slot);
+            if (previous != null) {
+                unset(slot);
+            }
+            return previous;
+        }
+
+        int slot = index.add(path);
+        Entry previous = entry(slot);
+        if (slot >= hashes.length) {
+            int capacity = Math.max(64, Math.max(slot + 1, hashes.length * 2));
+            hashes = Arrays.copyOf(hashes, capacity);
+            addedSeconds = Arrays.copyOf(addedSeconds, capacity);
+            addedNanos = Arrays.copyOf(addedNanos, capacity);
+        }
+
+        otherHashes.remove(slot);
+        if (isNumericHash(entry.hash())) {
+            hashes[slot] = Long.parseUnsignedLong(entry.hash(), 16);
+            numericHash.set(slot);
+        } else {
+            numericHash.clear(slot);
+            otherHashes.put(slot, entry.hash());
+        }
+
+        otherAdded.remove(slot);
+        Instant added = parseAdded(entry.added());
+        if (added != null) {
+            addedSeconds[slot] = added.getEpochSecond();
+            addedNanos[slot] = added.getNano();
+            numericAdded.set(slot);
+        } else {
+            numericAdded.clear(slot);
+            otherAdded.put(slot, entry.added());
+        }
+
+        if (!live.get(slot)) {
+            live.set(slot);
+            liveCount++;
+        }
+        return previous;
+    }
+
+    private void unset(int slot) {
+        live.clear(slot);
+        stale.clear(slot);
+        otherHashes.remove(slot);
+        otherAdded.remove(slot);
+        liveCount--;
+    }
+
+    /**
+     * Must be called with a data lock held.
+     *
+     * @return null if the slot has no entry
+     */
+    private Entry entry(int slot) {
+        if (slot < 0 || !live.get(slot)) {
+            return null;
+        }
+        String hash = numericHash.get(slot) ? HashUtils.toHex(hashes[slot]) : otherHashes.get(slot);
+        String added = numericAdded.get(slot)
+                ? Instant.ofEpochSecond(addedSeconds[slot], addedNanos[slot]).toString()
+                : otherAdded.get(slot);
+        return new Entry(hash, added);
+    }
+
+    /**
+     * Whether the hash is 16 lowercase hex digits, as written by {@link HashUtils#toHex(long)}.
+     */
+    private static boolean isNumericHash(String hash) {
+        if (hash == null || hash.length() != 16) {
+            return false;
+        }
+        for (int i = 0; i < 16; i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return null unless the date is an instant written the way {@link Instant#toString()} writes it
+     */
+    private static Instant parseAdded(String added) {
+        if (added == null) {
+            return null;
+        }
+        try {
+            Instant instant = Instant.parse(added);
+            return instant.toString().equals(added) ? instant : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private void changed(String path, Entry entry) {
+        pending.put(path, entry);
+
+        if (pending.size() < CHECKPOINT_RECORDS && System.nanoTime() - lastCheckpoint < CHECKPOINT_INTERVAL_NANOS) {
+            return;
+        }
+
+        // Another thread already checkpointing will pick this change up or leave it for the next one
+        if (!logLock.tryLock()) {
+            return;
+        }
+        try {
+            appendPending();
+        } catch (IOException e) {
+            // Kept pending, retried with the next checkpoint
+            log.warn("Failed to journal files database changes: {}", dbPath, e);
+        } finally {
+            logLock.unlock();
+        }
+    }
+
+    private void appendPending() throws IOException {
+        lastCheckpoint = System.nanoTime();
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Map.Entry<String, Entry>> changes = new ArrayList<>(pending.entrySet());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        boolean newLog = !Files.exists(dbPath);
+        if (newLog) {
+            Files.createDirectories(dbPath.getParent());
+            writeHeader(out);
+        }
+        for (Map.Entry<String, Entry> change : changes) {
+            writeRecord(out, change.getKey(), change.getValue());
+        }
+
+        try (FileChannel channel = FileChannel.open(dbPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        if (newLog) {
+            syncDirectory();
+        }
+
+        // A path changed again meanwhile stays pending with its new entry
+        for (Map.Entry<String, Entry> change : changes) {
+            pending.remove(change.getKey(), change.getValue());
+        }
+        logRecords += changes.size();
+        log.debug("Journaled {} changes to files database, {} records", changes.size(), logRecords);
+    }
+
+    private void writeSnapshot() throws IOException {
+        Files.createDirectories(dbPath.getParent());
+        Path tempPath = Files.createTempFile(dbPath.getParent(), "." + dbPath.getFileName(), ".tmp");
+
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel), 64 * 1024));
+                writeHeader(out);
+                dataLock.readLock().lock();
+                try {
+                    for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                        writeRecord(out, index.path(slot), entry(slot));
+                    }
+                } finally {
+                    dataLock.readLock().unlock();
+                }
+                out.flush();
+                channel.force(true);
+            }
+
+            try {
+                Files.move(tempPath, dbPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempPath, dbPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+            syncDirectory();
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+
+        logRecords = size();
+        log.debug("Compacted files database, {} records", logRecords);
+    }
+
+    private void syncDirectory() {
+        // Makes a new log durable, not supported on every platform
+        try (FileChannel dirChannel = FileChannel.open(dbPath.getParent(), StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException e) {
+            log.trace("Could not sync directory: {}", dbPath.getParent(), e);
+        }
+    }
+
+    private void writeHeader(OutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+    }
+
+    private void writeRecord(DataOutputStream out, String path, Entry entry) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64 + path.length());
+        DataOutputStream record = new DataOutputStream(recordBytes);
+
+        if (entry == DELETED) {
+            record.writeByte(RECORD_DELETE);
+            writeString(record, path);
+        } else {
+            record.writeByte(RECORD_PUT);
+            writeString(record, path);
+            writeString(record, entry.hash());
+            writeString(record, entry.added());
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(recordBytes.toByteArray());
+        recordBytes.writeTo(out);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void readLog() throws IOException {
+        byte version;
+        long validLength;
+        long size;
+
+        try (FileChannel channel = FileChannel.open(dbPath, StandardOpenOption.READ)) {
+            size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                // Compaction keeps the log far below this, it can only be corrupted
+                throw new IOException("Files database too large: " + size + " bytes");
+            }
+            if (size < HEADER_SIZE) {
+                throw new IOException("Files database header is incomplete: " + dbPath);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            version = buffer.get();
+            if (!Arrays.equals(magic, MAGIC) || (version != VERSION && version != VERSION_NO_CRC)) {
+                throw new IOException("Unsupported files database format: " + dbPath);
+            }
+
+            validLength = buffer.position();
+            while (buffer.hasRemaining() && readRecord(buffer, version == VERSION)) {
+                logRecords++;
+                validLength = buffer.position();
+            }
+        }
+
+        log.debug("Loaded {} files from {} records", liveCount, logRecords);
+
+        if (version != VERSION) {
+            // Records are only appended in the current format
+            writeSnapshot();
+        } else if (validLength < size) {
+            log.warn("Files database has an incomplete or damaged record at byte {}, dropping the last {} bytes",
+                    validLength, size - validLength);
+            truncateLog(validLength);
+        }
+    }
+
+    /**
+     * @return false if the record is incomplete or damaged, it is then not applied
+     */
+    private boolean readRecord(MappedByteBuffer buffer, boolean checksummed) {
+        int recordStart = buffer.position();
+
+        try {
+            byte type = buffer.get();
+            String path = readString(buffer);
+            Entry entry = switch (type) {
+                case RECORD_PUT -> new Entry(readString(buffer), readString(buffer));
+                case RECORD_DELETE -> DELETED;
+                default -> null;
+            };
+            if (entry == null || path == null) {
+                return false;
+            }
+
+            if (checksummed) {
+                int recordLength = buffer.position() - recordStart;
+                CRC32 crc = new CRC32();
+                crc.update(buffer.slice(recordStart, recordLength));
+                if (buffer.getInt() != (int) crc.getValue()) {
+                    return false;
+                }
+            }
+
+            set(path, entry);
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    private String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void truncateLog(long validLength) throws IOException {
+        try (FileChannel channel = FileChannel.open(dbPath, StandardOpenOption.WRITE)) {
+            channel.truncate(validLength);
+            channel.force(true);
+        } catch (IOException e) {
+            // Appending after the damaged record would hide every later change
+            log.debug("Could not truncate files database, rewriting it: {}", dbPath, e);
+            writeSnapshot();
+        }
+    }
+
+    private void migrateJson() throws IOException {
+        Map<String, Map<String, String>> legacy = JsonUtils.getJsonMapper()
+                .readValue(legacyJsonPath.toFile(), new TypeReference<>() {
+                });
+
+        for (Map.Entry<String, Map<String, String>> item : legacy.entrySet()) {
+            Map<String, String> metadata = item.getValue();
+            if (metadata != null) {
+                set(item.getKey(), new Entry(metadata.get("hash"), metadata.get("added")));
+            }
+        }
+
+        writeSnapshot();
+        Files.delete(legacyJsonPath);
+
+        log.info("Migrated {} files from {} to {}", liveCount, legacyJsonPath, dbPath);
+    }
+
+}
@@ -0,0 +1,33 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import uk.humbkr.xtream2jellyfin.common.XxHash64;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Hashes the bytes written through it.
+ */
+class HashingOutputStream extends FilterOutputStream {
+
+    private final XxHash64 hash;
+
+    HashingOutputStream(OutputStream out, XxHash64 hash) {
+        super(out);
+        this.hash = hash;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        hash.update(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        hash.update(b, off, len);
+    }
+
+}
@@ -0,0 +1,242 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Compact index of file paths, giving each path a stable slot number to key per-file data by.
+ * <p>
+ * Directories form a trie, so that the shared prefixes of paths are stored once. File names are stored as UTF-8
+ * in a single byte array, and found through an open addressing table keyed by directory and name.
+ * Looking a path up takes time proportional to its length. Slots are never freed.
+ * Not thread-safe.
+ */
+final class PathIndex {
+
+    private static final class Directory {
+
+        private final Directory parent;
+
+        private final String name;
+
+        private final int id;
+
+        private Map<String, Directory> children;
+
+        // Head of the list of the files in this directory, linked through nextInDirectory
+        private int firstFile = -1;
+
+        private Directory(Directory parent, String name, int id) {
+            this.parent = parent;
+            this.name = name;
+            this.id = id;
+        }
+
+    }
+
+    private final List<Directory> directories = new ArrayList<>();
+
+    private final Directory root;
+
+    // File names of all slots back to back, the name of a slot ends where the next one starts
+    private byte[] names = new byte[4096];
+
+    private int[] nameStart = new int[65];
+
+    private int[] fileDirectory = new int[64];
+
+    private int[] nextInDirectory = new int[64];
+
+    private int[] fileHash = new int[64];
+
+    // Slot + 1 of each file, 0 for an empty bucket
+    private int[] table = new int[128];
+
+    private int size = 0;
+
+    PathIndex() {
+        this.root = new Directory(null, null, 0);
+        directories.add(root);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot of the path, -1 if it is not indexed
+     */
+    int find(String path) {
+        int nameIndex = path.lastIndexOf('/') + 1;
+        Directory directory = directory(path, nameIndex - 1, false);
+        if (directory == null) {
+            return -1;
+        }
+
+        byte[] name = path.substring(nameIndex).getBytes(StandardCharsets.UTF_8);
+        int bucket = findBucket(directory.id, name, hash(directory.id, name));
+        return table[bucket] - 1;
+    }
+
+    /**
+     * @return the slot of the path, indexing it if needed
+     */
+    int add(String path) {
+        int nameIndex = path.lastIndexOf('/') + 1;
+        Directory directory = directory(path, nameIndex - 1, true);
+
+        byte[] name = path.substring(nameIndex).getBytes(StandardCharsets.UTF_8);
+        int hash = hash(directory.id, name);
+        int bucket = findBucket(directory.id, name, hash);
+        if (table[bucket] != 0) {
+            return table[bucket] - 1;
+        }
+
+        int slot = size++;
+        ensureCapacity(size, name.length);
+
+        System.arraycopy(name, 0, names, nameStart[slot], name.length);
+        nameStart[slot + 1] = nameStart[slot] + name.length;
+        fileDirectory[slot] = directory.id;
+        fileHash[slot] = hash;
+        nextInDirectory[slot] = directory.firstFile;
+        directory.firstFile = slot;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            table[bucket] = slot + 1;
+        }
+        return slot;
+    }
+
+    String path(int slot) {
+        StringBuilder path = new StringBuilder();
+        appendDirectory(path, directories.get(fileDirectory[slot]));
+        path.append(new String(names, nameStart[slot], nameStart[slot + 1] - nameStart[slot], StandardCharsets.UTF_8));
+        return path.toString();
+    }
+
+    /**
+     * Call the consumer with the slot of the path, and with the slots of every file under it when it is a directory.
+     */
+    void forEachUnder(String path, IntConsumer consumer) {
+        int slot = find(path);
+        if (slot >= 0) {
+            consumer.accept(slot);
+        }
+
+        Directory directory = directory(path, path.length(), false);
+        if (directory != null && directory != root) {
+            forEachIn(directory, consumer);
+        }
+    }
+
+    private void forEachIn(Directory directory, IntConsumer consumer) {
+        for (int slot = directory.firstFile; slot >= 0; slot = nextInDirectory[slot]) {
+            consumer.accept(slot);
+        }
+        if (directory.children != null) {
+            for (Directory child : directory.children.values()) {
+                forEachIn(child, consumer);
+            }
+        }
+    }
+
+    private void appendDirectory(StringBuilder path, Directory directory) {
+        if (directory == root) {
+            return;
+        }
+        appendDirectory(path, directory.parent);
+        path.append(directory.name).append('/');
+    }
+
+    /**
+     * @param end end of the directory part of the path, -1 for a file at the root
+     * @return null if the directory is not indexed and not created
+     */
+    private Directory directory(String path, int end, boolean create) {
+        Directory directory = root;
+        int start = 0;
+
+        while (start <= end) {
+            int separator = path.indexOf('/', start);
+            if (separator < 0 || separator > end) {
+                separator = end;
+            }
+
+            String name = path.substring(start, separator);
+            Directory child = directory.children != null ? directory.children.get(name) : null;
+            if (child == null) {
+                if (!create) {
+                    return null;
+                }
+                child = new Directory(directory, name, directories.size());
+                directories.add(child);
+                if (directory.children == null) {
+                    directory.children = new HashMap<>(4);
+                }
+                directory.children.put(name, child);
+            }
+
+            directory = child;
+            start = separator + 1;
+        }
+        return directory;
+    }
+
+    private int findBucket(int directoryId, byte[] name, int hash) {
+        int mask = table.length - 1;
+        int bucket = hash & mask;
+
+        while (true) {
+            int slot = table[bucket] - 1;
+            if (slot < 0) {
+                return bucket;
+            }
+            if (fileHash[slot] == hash && fileDirectory[slot] == directoryId
+                    && Arrays.equals(names, nameStart[slot], nameStart[slot + 1], name, 0, name.length)) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & mask;
+        }
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int bucket = fileHash[slot] & mask;
+            while (table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            table[bucket] = slot + 1;
+        }
+    }
+
+    private void ensureCapacity(int slots, int nameLength) {
+        if (slots >= fileDirectory.length) {
+            int capacity = fileDirectory.length * 2;
+            fileDirectory = Arrays.copyOf(fileDirectory, capacity);
+            nextInDirectory = Arrays.copyOf(nextInDirectory, capacity);
+            fileHash = Arrays.copyOf(fileHash, capacity);
+            nameStart = Arrays.copyOf(nameStart, capacity + 1);
+        }
+
+        int namesLength = nameStart[slots - 1] + nameLength;
+        if (namesLength > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength));
+        }
+    }
+
+    private static int hash(int directoryId, byte[] name) {
+        int hash = directoryId * 0x9E3779B9 + Arrays.hashCode(name);
+        return hash ^ (hash >>> 16);
+    }
+
+}
@@ -3,50 +3,259 @@ package uk.humbkr.xtream2jellyfin.filemanager;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
+/**
+ * Writes files without keeping any state between runs.
+ * <p>
+ * By default the media directory is wiped at the start of every run and everything is written again.
+ * In diff-sync mode, the existing files are compared with the new content instead, only the ones that differ are
+ * written, and the files not produced by the run are deleted once it completes.
+ */
 @Slf4j
 public class SimpleFileManager extends BaseFileManager implements FileManager {
 
+    private final boolean diffSync;
+
+    // Diff-sync: files saved or retained by the current run
+    private final Set<Path> producedFiles = ConcurrentHashMap.newKeySet();
+
+    // Diff-sync: directories whose files are all retained
+    private final Set<Path> retainedDirectories = ConcurrentHashMap.newKeySet();
+
     public SimpleFileManager(String rootDir) {
-        super(rootDir);
+        this(rootDir, null);
+    }
+
+    public SimpleFileManager(String rootDir, WriteBehindWriter writeBehind) {
+        this(rootDir, writeBehind, false);
+    }
+
+    public SimpleFileManager(String rootDir, WriteBehindWriter writeBehind, boolean diffSync) {
+        super(rootDir, writeBehind);
+        this.diffSync = diffSync;
     }
 
     @Override
     public void initialize() {
+        directories.clear();
+
+        if (diffSync) {
+            producedFiles.clear();
+            retainedDirectories.clear();
+            return;
+        }
+
         this.deleteDirectory(rootDir);
         log.info("Cleaned up directory: {}", rootDir);
     }
 
     @Override
     public void complete() {
-        // No-op: SimpleFileManager doesn't maintain a database
+        // No database to maintain, only queued writes to wait for
+        flush();
+
+        if (diffSync) {
+            deleteUnproducedFiles();
+            producedFiles.clear();
+            retainedDirectories.clear();
+        }
+        directories.clear();
     }
 
     @Override
-    public void save(String path, Object content, String dakte) {
+    public void save(String path, Object content, String dakte, SaveListener listener) {
         try {
-            Path filePath = Paths.get(path);
-            FileManagerUtils.prepareDirectory(filePath.getParent().toString());
-
-            String fileContent;
-            if (path.endsWith(".json")) {
-                fileContent = objectMapper.writeValueAsString(content);
-            } else {
-                if (content instanceof String) {
-                    fileContent = (String) content;
-                } else {
-                    fileContent = objectMapper.writeValueAsString(content);
-                }
+            byte[] fileBytes = isRawContent(path, content)
+                    ? ((String) content).getBytes(StandardCharsets.UTF_8)
+                    : objectMapper.writeValueAsBytes(content);
+
+            // A path saved again in the same run may still have its first write queued, it is always written
+            if (diffSync && produce(path) && isUnchanged(Paths.get(path), fileBytes)) {
+                log.debug("File unchanged: {}", path);
+                notifySaved(listener, path, true);
+                return;
             }
 
-            log.debug("Writing file: {}", path);
-            Files.writeString(filePath, fileContent, StandardCharsets.UTF_8);
+            writeFile(path, fileBytes, () -> notifySaved(listener, path, true),
+                    (failedPath, e) -> notifySaved(listener, failedPath, false));
 
         } catch (IOException e) {
             log.error("Failed to save file: {}", path, e);
+            notifySaved(listener, path, false);
+        }
+    }
+
+    @Override
+    public void saveStream(String path, ContentWriter writer, String date) throws IOException {
+        Path filePath = Paths.get(path);
+        Path tempPath = writeTempFile(filePath, writer, null);
+
+        try {
+            if (diffSync && produce(path) && isUnchanged(filePath, tempPath)) {
+                log.debug("File unchanged: {}", path);
+                return;
+            }
+
+            log.debug("Writing file: {}", path);
+            moveIntoPlace(tempPath, filePath);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    @Override
+    public boolean retain(String path) {
+        // Without diff-sync, the media directory is wiped on initialize and nothing can be kept
+        if (!diffSync) {
+            return false;
+        }
+
+        Path filePath = normalize(path);
+        if (Files.isDirectory(filePath)) {
+            // An empty directory has no output to keep, it must be written again
+            if (!containsFile(filePath)) {
+                log.debug("No files to retain under: {}", path);
+                return false;
+            }
+            retainedDirectories.add(filePath);
+            return true;
+        }
+        if (Files.exists(filePath)) {
+            producedFiles.add(filePath);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean retain(Collection<String> paths) {
+        if (!diffSync) {
+            return false;
+        }
+
+        for (String path : paths) {
+            if (!Files.isRegularFile(Paths.get(path))) {
+                log.debug("File missing, cannot be retained: {}", path);
+                return false;
+            }
+        }
+
+        for (String path : paths) {
+            producedFiles.add(normalize(path));
+        }
+        return true;
+    }
+
+    private boolean containsFile(Path directory) {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.anyMatch(Files::isRegularFile);
+        } catch (IOException | UncheckedIOException e) {
+            log.debug("Could not list directory: {}", directory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Mark a file as produced by the current run.
+     *
+     * @return false if it was already produced by the run
+     */
+    private boolean produce(String path) {
+        return producedFiles.add(normalize(path));
+    }
+
+    private Path normalize(String path) {
+        return Paths.get(path).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Whether a file already holds the content, its size is checked first so that most changes are found
+     * without reading it.
+     */
+    private boolean isUnchanged(Path filePath, byte[] content) {
+        try {
+            if (Files.size(filePath) != content.length) {
+                return false;
+            }
+            return Arrays.equals(Files.readAllBytes(filePath), content);
+        } catch (IOException e) {
+            // Missing or unreadable, written again
+            return false;
+        }
+    }
+
+    private boolean isUnchanged(Path filePath, Path newFilePath) {
+        try {
+            if (Files.size(filePath) != Files.size(newFilePath)) {
+                return false;
+            }
+            return Files.mismatch(filePath, newFilePath) == -1;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Delete the files of previous runs that were not produced by the current one, then the directories left empty.
+     */
+    private void deleteUnproducedFiles() {
+        Path rootPath = normalize(rootDir);
+        if (!Files.exists(rootPath)) {
+            return;
+        }
+
+        int[] deletedCount = {0};
+        try {
+            Files.walkFileTree(rootPath, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    return retainedDirectories.contains(dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (!producedFiles.contains(file)) {
+                        try {
+                            Files.delete(file);
+                            deletedCount[0]++;
+                            log.debug("Deleted file not produced by this run: {}", file);
+                        } catch (IOException e) {
+                            log.warn("Failed to delete file: {}", file, e);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                    if (!dir.equals(rootPath)) {
+                        try {
+                            Files.delete(dir);
+                            directories.invalidate(dir);
+                        } catch (DirectoryNotEmptyException e) {
+                            // Still holds produced files
+                        } catch (IOException e) {
+                            log.debug("Could not delete directory: {}", dir, e);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.error("Failed to delete files not produced by this run: {}", rootDir, e);
+        }
+
+        if (deletedCount[0] > 0) {
+            log.info("Deleted {} files not produced by this run", deletedCount[0]);
         }
     }
 
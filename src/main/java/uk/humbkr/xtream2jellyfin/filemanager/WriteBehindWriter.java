@@ -0,0 +1,270 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Queues file writes and performs them in the background on a small I/O pool.
+ * <p>
+ * Writes are grouped by parent directory: a directory is drained by one thread at a time, which prepares it once
+ * and writes its files in submission order, so the last write to a path always wins.
+ * With fsync batching, written files are kept open and synced together, along with their directory,
+ * every {@code fsyncBatchSize} files.
+ */
+@Slf4j
+public class WriteBehindWriter {
+
+    @FunctionalInterface
+    public interface FailureHandler {
+
+        void onFailure(String path, IOException e);
+
+    }
+
+    private record PendingWrite(String path, byte[] content, Runnable onWritten, FailureHandler failureHandler) {
+    }
+
+    private final ExecutorService pool;
+
+    private final int fsyncBatchSize;
+
+    // Directories already prepared, shared with the file manager that deletes them
+    @Getter
+    private final DirectoryCache directories = new DirectoryCache();
+
+    // Bounds the writes waiting in memory, submitting blocks once it is used up
+    private final Semaphore capacity;
+
+    // Guarded by this: writes waiting per directory, a directory is present while it is being drained
+    private final Map<Path, Deque<PendingWrite>> pendingByDir = new HashMap<>();
+
+    // Guarded by this: writes submitted but not done yet
+    private int inFlight = 0;
+
+    /**
+     * @param threads        number of directories written at the same time
+     * @param maxPending     number of writes held in memory before submitting blocks
+     * @param fsyncBatchSize number of files synced together, 0 leaves syncing to the operating system
+     */
+    public WriteBehindWriter(int threads, int maxPending, int fsyncBatchSize) {
+        this.pool = Executors.newFixedThreadPool(Math.max(1, threads),
+                Thread.ofPlatform().name("write-behind-", 0).daemon(true).factory());
+        this.capacity = new Semaphore(Math.max(1, maxPending));
+        this.fsyncBatchSize = Math.max(0, fsyncBatchSize);
+    }
+
+    /**
+     * Queue a write, replacing the file with the content once it runs.
+     *
+     * @param failureHandler called from an I/O thread if the file could not be written
+     */
+    public void write(String path, byte[] content, FailureHandler failureHandler) {
+        write(path, content, null, failureHandler);
+    }
+
+    /**
+     * Queue a write, replacing the file with the content once it runs.
+     *
+     * @param onWritten      called from an I/O thread once the file is written, and synced when fsync is batched
+     * @param failureHandler called from an I/O thread if the file could not be written
+     */
+    public void write(String path, byte[] content, Runnable onWritten, FailureHandler failureHandler) {
+        capacity.acquireUninterruptibly();
+
+        Path dir = Paths.get(path).getParent();
+        boolean startDrain;
+
+        synchronized (this) {
+            inFlight++;
+            Deque<PendingWrite> pending = pendingByDir.get(dir);
+            startDrain = pending == null;
+            if (startDrain) {
+                pending = new ArrayDeque<>();
+                pendingByDir.put(dir, pending);
+            }
+            pending.add(new PendingWrite(path, content, onWritten, failureHandler));
+        }
+
+        if (startDrain) {
+            pool.execute(() -> drain(dir));
+        }
+    }
+
+    /**
+     * Wait until every queued write is done, including its fsync.
+     */
+    public synchronized void flush() {
+        boolean interrupted = false;
+        while (inFlight > 0) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // Returning early would let the caller treat unwritten files as saved
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(Path dir) {
+        // Once per directory batch rather than once per file
+        if (dir != null) {
+            directories.prepare(dir);
+        }
+
+        List<PendingWrite> unsynced = new ArrayList<>();
+        List<FileChannel> unsyncedChannels = new ArrayList<>();
+
+        while (true) {
+            List<PendingWrite> batch;
+            synchronized (this) {
+                Deque<PendingWrite> pending = pendingByDir.get(dir);
+                if (pending.isEmpty()) {
+                    pendingByDir.remove(dir);
+                    break;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+
+            for (PendingWrite write : batch) {
+                FileChannel channel = writeFile(write);
+                if (channel == null) {
+                    // Failed, already reported
+                    done(1);
+                } else if (fsyncBatchSize == 0) {
+                    written(write);
+                    done(1);
+                } else {
+                    unsynced.add(write);
+                    unsyncedChannels.add(channel);
+                    if (unsynced.size() >= fsyncBatchSize) {
+                        sync(dir, unsynced, unsyncedChannels);
+                    }
+                }
+            }
+        }
+
+        if (!unsynced.isEmpty()) {
+            sync(dir, unsynced, unsyncedChannels);
+        }
+    }
+
+    /**
+     * @return the still open channel when fsync is batched, a closed one otherwise, null if the write failed
+     */
+    private FileChannel writeFile(PendingWrite write) {
+        Path filePath = Paths.get(write.path());
+        FileChannel channel = null;
+
+        try {
+            log.debug("Writing file: {}", write.path());
+            channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+
+            ByteBuffer buffer = ByteBuffer.wrap(write.content());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+
+            if (fsyncBatchSize == 0) {
+                channel.close();
+            }
+            return channel;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            fail(write, e);
+            return null;
+        } catch (RuntimeException e) {
+            // A directory stuck in the middle of a drain would never be written again
+            closeQuietly(channel);
+            fail(write, new IOException(e));
+            return null;
+        }
+    }
+
+    private void sync(Path dir, List<PendingWrite> writes, List<FileChannel> channels) {
+        for (int i = 0; i < writes.size(); i++) {
+            FileChannel channel = channels.get(i);
+            try {
+                channel.force(true);
+                written(writes.get(i));
+            } catch (IOException e) {
+                fail(writes.get(i), e);
+            } finally {
+                closeQuietly(channel);
+            }
+        }
+
+        // Makes the new directory entries durable, not supported on every platform
+        if (dir != null) {
+            try (FileChannel dirChannel = FileChannel.open(dir, StandardOpenOption.READ)) {
+                dirChannel.force(true);
+            } catch (IOException e) {
+                log.trace("Could not sync directory: {}", dir, e);
+            }
+        }
+
+        done(writes.size());
+        writes.clear();
+        channels.clear();
+    }
+
+    private void written(PendingWrite write) {
+        if (write.onWritten() != null) {
+            try {
+                write.onWritten().run();
+            } catch (RuntimeException e) {
+                log.error("Failed to handle written file: {}", write.path(), e);
+            }
+        }
+    }
+
+    private void fail(PendingWrite write, IOException e) {
+        log.error("Failed to save file: {}", write.path(), e);
+        if (write.failureHandler() != null) {
+            try {
+                write.failureHandler().onFailure(write.path(), e);
+            } catch (RuntimeException handlerException) {
+                log.error("Failed to handle write failure: {}", write.path(), handlerException);
+            }
+        }
+    }
+
+    private synchronized void done(int count) {
+        inFlight -= count;
+        capacity.release(count);
+        if (inFlight == 0) {
+            notifyAll();
+        }
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.trace("Failed to close file", e);
+            }
+        }
+    }
+
+}
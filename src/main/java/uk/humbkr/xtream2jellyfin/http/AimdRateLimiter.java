@@ -0,0 +1,132 @@
+package uk.humbkr.xtream2jellyfin.http;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.config.RateLimitConfig;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket whose rate adapts with AIMD: it grows additively while responses are healthy
+ * and is cut multiplicatively when the provider shows signs of overload.
+ */
+@Slf4j
+public class AimdRateLimiter implements RateLimiter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // Concurrent failures usually report the same overload, only the first one cuts the rate
+    private static final long DECREASE_COOLDOWN_NANOS = NANOS_PER_SECOND;
+
+    private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(10);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final double minRate;
+
+    private final double maxRate;
+
+    private final double burst;
+
+    private final double increaseStep;
+
+    private final double decreaseFactor;
+
+    private double rate;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    private long blockedUntil;
+
+    private long lastDecrease;
+
+    public AimdRateLimiter(RateLimitConfig config) {
+        this.minRate = Math.max(0.01, config.getMinRate());
+        this.maxRate = Math.max(minRate, config.getMaxRate());
+        this.burst = Math.max(1, config.getBurst());
+        this.increaseStep = Math.max(0, config.getIncreaseStep());
+        this.decreaseFactor = Math.min(1, Math.max(0.01, config.getDecreaseFactor()));
+        this.rate = Math.min(maxRate, Math.max(minRate, config.getInitialRate()));
+
+        long now = System.nanoTime();
+        this.tokens = burst;
+        this.lastRefill = now;
+        this.blockedUntil = now;
+        this.lastDecrease = now - DECREASE_COOLDOWN_NANOS;
+    }
+
+    @Override
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+
+            // Tokens may go negative, which reserves future capacity for the callers already waiting
+            tokens -= 1;
+            long tokenWait = tokens >= 0 ? 0 : (long) (-tokens / rate * NANOS_PER_SECOND);
+            waitNanos = Math.max(tokenWait, blockedUntil - now);
+        } finally {
+            lock.unlock();
+        }
+
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    @Override
+    public void onSuccess() {
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            rate = Math.min(maxRate, rate + increaseStep);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onThrottle(Duration retryAfter) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            refill(now);
+
+            if (now - lastDecrease >= DECREASE_COOLDOWN_NANOS) {
+                rate = Math.max(minRate, rate * decreaseFactor);
+                tokens = Math.min(tokens, 0);
+                lastDecrease = now;
+                log.debug("Provider throttling, rate reduced to {} requests/second", String.format("%.2f", rate));
+            }
+
+            if (retryAfter != null && !retryAfter.isNegative()) {
+                Duration delay = retryAfter.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : retryAfter;
+                blockedUntil = Math.max(blockedUntil, now + delay.toNanos());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getRate() {
+        lock.lock();
+        try {
+            return rate;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refill(long now) {
+        double elapsedSeconds = (double) (now - lastRefill) / NANOS_PER_SECOND;
+        tokens = Math.min(burst, tokens + elapsedSeconds * rate);
+        lastRefill = now;
+    }
+
+}
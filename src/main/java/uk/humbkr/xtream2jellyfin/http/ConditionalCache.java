@@ -0,0 +1,173 @@
+package uk.humbkr.xtream2jellyfin.http;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.common.JsonUtils;
+import uk.humbkr.xtream2jellyfin.filemanager.FileManagerUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the ETag/Last-Modified validators of provider responses, together with the body they describe,
+ * so unchanged payloads can be requested conditionally and served locally on a 304.
+ */
+@Slf4j
+public class ConditionalCache {
+
+    private static final TypeReference<Map<String, Validators>> VALIDATORS_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = JsonUtils.initializeJsonMapper();
+
+    private final Path validatorsPath;
+
+    private final Map<String, Validators> validators = new ConcurrentHashMap<>();
+
+    public ConditionalCache(String cacheDir) {
+        this.validatorsPath = Paths.get(cacheDir, "validators.json");
+        load();
+    }
+
+    /**
+     * Add If-None-Match/If-Modified-Since headers when a previous body is available locally.
+     *
+     * @param bodyPath local path of the body, also used as the cache key
+     */
+    public void addConditionalHeaders(HttpRequest.Builder requestBuilder, String bodyPath) {
+        Validators entry = validators.get(bodyPath);
+        if (entry == null || !Files.exists(Paths.get(bodyPath))) {
+            return;
+        }
+
+        if (entry.getEtag() != null) {
+            requestBuilder.header("If-None-Match", entry.getEtag());
+        }
+        if (entry.getLastModified() != null) {
+            requestBuilder.header("If-Modified-Since", entry.getLastModified());
+        }
+    }
+
+    public InputStream openBody(String bodyPath) throws IOException {
+        return Files.newInputStream(Paths.get(bodyPath));
+    }
+
+    public String readBody(String bodyPath) throws IOException {
+        return Files.readString(Paths.get(bodyPath), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a temporary file next to the body, to be passed to {@link #storeBody(String, Path, HttpHeaders)}.
+     */
+    public Path createTempBody(String bodyPath) throws IOException {
+        Path path = Paths.get(bodyPath);
+        FileManagerUtils.prepareDirectory(path.getParent().toString());
+        return Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+    }
+
+    /**
+     * Keep a freshly downloaded body if the response carries validators, otherwise discard it.
+     */
+    public void storeBody(String bodyPath, Path tempBody, HttpHeaders headers) throws IOException {
+        Validators entry = extractValidators(headers);
+        if (entry == null) {
+            Files.deleteIfExists(tempBody);
+            forget(bodyPath);
+            return;
+        }
+
+        Files.move(tempBody, Paths.get(bodyPath), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        validators.put(bodyPath, entry);
+        persist();
+    }
+
+    public void storeBody(String bodyPath, String body, HttpHeaders headers) throws IOException {
+        if (extractValidators(headers) == null) {
+            forget(bodyPath);
+            return;
+        }
+
+        Path tempBody = createTempBody(bodyPath);
+        Files.writeString(tempBody, body, StandardCharsets.UTF_8);
+        storeBody(bodyPath, tempBody, headers);
+    }
+
+    /**
+     * Keep only the validators of a body stored elsewhere, such as a media file.
+     */
+    public void storeValidators(String bodyPath, HttpHeaders headers) throws IOException {
+        Validators entry = extractValidators(headers);
+        Validators previous = entry != null ? validators.put(bodyPath, entry) : validators.remove(bodyPath);
+        if (!Objects.equals(previous, entry)) {
+            persist();
+        }
+    }
+
+    public void discard(Path tempBody) {
+        try {
+            Files.deleteIfExists(tempBody);
+        } catch (IOException e) {
+            log.debug("Failed to delete temporary body: {}", tempBody, e);
+        }
+    }
+
+    private void forget(String bodyPath) throws IOException {
+        if (validators.remove(bodyPath) != null) {
+            Files.deleteIfExists(Paths.get(bodyPath));
+            persist();
+        }
+    }
+
+    private Validators extractValidators(HttpHeaders headers) {
+        String etag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        return new Validators(etag, lastModified);
+    }
+
+    private void load() {
+        if (!Files.exists(validatorsPath)) {
+            return;
+        }
+        try {
+            validators.putAll(objectMapper.readValue(validatorsPath.toFile(), VALIDATORS_TYPE));
+        } catch (IOException e) {
+            log.warn("Failed to read validators, conditional requests disabled until next download: {}", validatorsPath, e);
+        }
+    }
+
+    private synchronized void persist() throws IOException {
+        FileManagerUtils.prepareDirectory(validatorsPath.getParent().toString());
+        Path tempPath = Files.createTempFile(validatorsPath.getParent(), "validators", ".tmp");
+        objectMapper.writeValue(tempPath.toFile(), validators);
+        Files.move(tempPath, validatorsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Validators {
+
+        private String etag;
+
+        private String lastModified;
+
+    }
+
+}
@@ -0,0 +1,53 @@
+package uk.humbkr.xtream2jellyfin.http;
+
+import uk.humbkr.xtream2jellyfin.config.RateLimitConfig;
+
+import java.time.Duration;
+
+/**
+ * Paces the requests sent to a provider. A single instance is shared by all handlers of a provider.
+ */
+public interface RateLimiter {
+
+    RateLimiter UNLIMITED = new RateLimiter() {
+        @Override
+        public void acquire() {
+            // No pacing
+        }
+
+        @Override
+        public void onSuccess() {
+            // No pacing
+        }
+
+        @Override
+        public void onThrottle(Duration retryAfter) {
+            // No pacing
+        }
+    };
+
+    static RateLimiter create(RateLimitConfig config) {
+        if (config == null || !config.isEnabled()) {
+            return UNLIMITED;
+        }
+        return new AimdRateLimiter(config);
+    }
+
+    /**
+     * Block until the next request may be sent.
+     */
+    void acquire() throws InterruptedException;
+
+    /**
+     * Report a healthy response.
+     */
+    void onSuccess();
+
+    /**
+     * Report a sign of overload (HTTP 429/503, timeout or Retry-After header).
+     *
+     * @param retryAfter delay requested by the provider, or null if none was given
+     */
+    void onThrottle(Duration retryAfter);
+
+}
@@ -0,0 +1,49 @@
+package uk.humbkr.xtream2jellyfin.http;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bytes transferred for one endpoint: as received on the wire and after decompression.
+ */
+public class TransferMetrics {
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder wireBytes = new LongAdder();
+
+    private final LongAdder rawBytes = new LongAdder();
+
+    public void addRequest() {
+        requests.increment();
+    }
+
+    public void addWireBytes(long bytes) {
+        wireBytes.add(bytes);
+    }
+
+    public void addRawBytes(long bytes) {
+        rawBytes.add(bytes);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getWireBytes() {
+        return wireBytes.sum();
+    }
+
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        long wire = getWireBytes();
+        long raw = getRawBytes();
+        double ratio = wire > 0 ? (double) raw / wire : 1.0;
+        return String.format("Requests: %d, Received: %.1f KB, Decoded: %.1f KB, Ratio: %.1fx",
+                getRequests(), wire / 1024.0, raw / 1024.0, ratio);
+    }
+
+}
@@ -0,0 +1,226 @@
+package uk.humbkr.xtream2jellyfin.http;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import uk.humbkr.xtream2jellyfin.common.Constants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Provider-scoped HTTP transport shared by all handlers of a provider, so they reuse a single
+ * connection pool and a single request rate.
+ */
+@Slf4j
+public class XtreamTransport {
+
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final int DECODE_BUFFER_SIZE = 64 * 1024;
+
+    private final String providerName;
+
+    @Getter
+    private final HttpClient httpClient;
+
+    @Getter
+    private final RateLimiter rateLimiter;
+
+    @Getter
+    private final ConditionalCache conditionalCache;
+
+    private final Map<String, TransferMetrics> metrics = new ConcurrentHashMap<>();
+
+    public XtreamTransport(String providerName, RateLimiter rateLimiter, ConditionalCache conditionalCache) {
+        this.providerName = providerName;
+        this.rateLimiter = rateLimiter;
+        this.conditionalCache = conditionalCache;
+
+        // HTTP/2 is negotiated through ALPN on https, otherwise the client keeps HTTP/1.1 keep-alive connections
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .build();
+    }
+
+    public HttpRequest buildRequest(String url) {
+        return newRequest(url).build();
+    }
+
+    public HttpRequest.Builder newRequest(String url) {
+        URI uri = URI.create(url);
+
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(uri)
+                .timeout(REQUEST_TIMEOUT)
+                .GET();
+
+        // Cleartext HTTP/2 relies on an Upgrade handshake that many panels mishandle
+        if ("http".equalsIgnoreCase(uri.getScheme())) {
+            requestBuilder.version(HttpClient.Version.HTTP_1_1);
+        }
+
+        for (Map.Entry<String, String> header : Constants.HEADERS.entrySet()) {
+            requestBuilder.header(header.getKey(), header.getValue());
+        }
+
+        return requestBuilder;
+    }
+
+    /**
+     * Send a provider request once the rate limiter allows it and report the outcome back to the limiter.
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+            throws IOException, InterruptedException {
+        rateLimiter.acquire();
+
+        HttpResponse<T> response;
+        try {
+            response = httpClient.send(request, bodyHandler);
+        } catch (HttpTimeoutException e) {
+            rateLimiter.onThrottle(null);
+            throw e;
+        }
+
+        recordResponse(response);
+
+        return response;
+    }
+
+    /**
+     * Send a provider request and expose the body as a byte stream, see {@link #openBody(HttpResponse, String)}.
+     */
+    public HttpResponse<InputStream> sendForStream(HttpRequest request) throws IOException, InterruptedException {
+        return send(request, HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    /**
+     * Decode the body of a response as it is read, according to its Content-Encoding.
+     * The compressed body is never buffered, the caller must close the returned stream.
+     *
+     * @param endpointName name under which the transferred bytes are recorded
+     */
+    public InputStream openBody(HttpResponse<InputStream> response, String endpointName) throws IOException {
+        TransferMetrics endpointMetrics = metrics.computeIfAbsent(endpointName, key -> new TransferMetrics());
+        endpointMetrics.addRequest();
+
+        InputStream wireBody = new CountingInputStream(response.body(), endpointMetrics::addWireBytes);
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse("identity").trim();
+
+        InputStream decodedBody;
+        try {
+            decodedBody = switch (contentEncoding.toLowerCase(Locale.ROOT)) {
+                case "gzip", "x-gzip" -> new GZIPInputStream(wireBody, DECODE_BUFFER_SIZE);
+                case "deflate" -> openDeflate(wireBody);
+                case "identity", "" -> wireBody;
+                default -> throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+            };
+        } catch (IOException e) {
+            wireBody.close();
+            throw e;
+        }
+
+        return new CountingInputStream(decodedBody, endpointMetrics::addRawBytes);
+    }
+
+    public String readBody(HttpResponse<InputStream> response, String endpointName) throws IOException {
+        try (InputStream body = openBody(response, endpointName)) {
+            return new String(body.readAllBytes(), getCharset(response));
+        }
+    }
+
+    /**
+     * Log and reset the transfer metrics collected since the previous call.
+     */
+    public void logMetrics() {
+        for (Map.Entry<String, TransferMetrics> entry : new TreeMap<>(metrics).entrySet()) {
+            log.info("[{}] Transfer '{}', {}", providerName, entry.getKey(), entry.getValue());
+        }
+        metrics.clear();
+    }
+
+    private InputStream openDeflate(InputStream wireBody) throws IOException {
+        // HTTP deflate is meant to be zlib-wrapped, but some servers send a raw deflate stream
+        PushbackInputStream body = new PushbackInputStream(wireBody, 2);
+        byte[] header = body.readNBytes(2);
+        body.unread(header);
+
+        boolean zlibWrapped = header.length == 2
+                && (header[0] & 0x0F) == 8
+                && (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0;
+
+        return new InflaterInputStream(body, new Inflater(!zlibWrapped), DECODE_BUFFER_SIZE);
+    }
+
+    private Charset getCharset(HttpResponse<?> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        for (String parameter : contentType.split(";")) {
+            String[] parts = parameter.trim().split("=", 2);
+            if (parts.length == 2 && "charset".equalsIgnoreCase(parts[0].trim())) {
+                try {
+                    return Charset.forName(parts[1].trim().replace("\"", ""));
+                } catch (IllegalArgumentException e) {
+                    log.debug("[{}] Unsupported charset: {}", providerName, parts[1]);
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private void recordResponse(HttpResponse<?> response) {
+        int statusCode = response.statusCode();
+        Duration retryAfter = parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null));
+
+        if (statusCode == 429 || statusCode == 503 || retryAfter != null) {
+            log.warn("[{}] Provider is throttling requests, Status: {}, Retry-After: {}",
+                    providerName, statusCode, retryAfter);
+            rateLimiter.onThrottle(retryAfter);
+        } else if (statusCode >= 200 && statusCode < 300 || statusCode == 304) {
+            rateLimiter.onSuccess();
+        }
+    }
+
+    private Duration parseRetryAfter(String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        // Retry-After is either a number of seconds or an HTTP date
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime retryDate = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                Duration delay = Duration.between(Instant.now(), retryDate.toInstant());
+                return delay.isNegative() ? Duration.ZERO : delay;
+            } catch (DateTimeParseException ex) {
+                log.debug("[{}] Invalid Retry-After header: {}", providerName, value);
+                return null;
+            }
+        }
+    }
+
+}
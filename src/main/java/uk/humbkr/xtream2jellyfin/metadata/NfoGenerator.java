@@ -1,22 +1,20 @@
 package uk.humbkr.xtream2jellyfin.metadata;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import uk.humbkr.xtream2jellyfin.common.XmlUtils;
-import uk.humbkr.xtream2jellyfin.metadata.nfo.EpisodeNfo;
-import uk.humbkr.xtream2jellyfin.metadata.nfo.MovieNfo;
-import uk.humbkr.xtream2jellyfin.metadata.nfo.TvShowNfo;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 @Slf4j
 public class NfoGenerator {
 
+    private static final Pattern TRAILING_PARENTHESES = Pattern.compile("\\s*\\([^)]*\\)\\s*$");
+
+    private static final Pattern TRAILING_BRACKETS = Pattern.compile("\\s*\\[[^]]*\\]\\s*$");
+
+    private static final Pattern LEADING_PIPES = Pattern.compile("^\\|[^|]*\\|\\s*");
+
     /**
      * Generate NFO XML content for a TV show
      *
@@ -25,9 +23,28 @@ public class NfoGenerator {
      */
     public static String generateTvShowNfo(Map<String, Object> seriesData) {
         try {
-            TvShowNfo nfo = buildTvShowNfo(seriesData);
-            return XmlUtils.getXmlMapper().writeValueAsString(nfo);
-        } catch (JsonProcessingException e) {
+            NfoWriter nfo = NfoWriter.start("tvshow");
+
+            String title = getString(seriesData, "name");
+            nfo.element("title", StringUtils.isNotBlank(title) ? cleanTitle(title) : null);
+            nfo.element("plot", nonBlank(getString(seriesData, "plot")));
+            nfo.element("premiered", nonBlank(getPremiered(seriesData)));
+            nfo.element("userrating", parseRating(getString(seriesData, "rating")));
+
+            String tmdbId = getString(seriesData, "tmdb");
+            if (StringUtils.isNotBlank(tmdbId)) {
+                nfo.uniqueId("tmdb", true, tmdbId);
+            } else {
+                nfo.emptyElement("uniqueid");
+            }
+
+            nfo.list("genre", null, getString(seriesData, "genre"), '/');
+            nfo.list("actor", "name", getString(seriesData, "cast"), ',');
+            nfo.list("director", null, getString(seriesData, "director"), ',');
+            nfo.element("runtime", parseRuntime(getString(seriesData, "episode_run_time")));
+
+            return nfo.finish();
+        } catch (IllegalArgumentException e) {
             log.error("Failed to generate TV show NFO", e);
             return null;
         }
@@ -41,9 +58,30 @@ public class NfoGenerator {
      */
     public static String generateEpisodeNfo(Map<String, Object> episodeData) {
         try {
-            EpisodeNfo nfo = buildEpisodeNfo(episodeData);
-            return XmlUtils.getXmlMapper().writeValueAsString(nfo);
-        } catch (JsonProcessingException e) {
+            NfoWriter nfo = NfoWriter.start("episodedetails");
+
+            String title = getString(episodeData, "title");
+            nfo.element("title", StringUtils.isNotBlank(title) ? extractEpisodeTitle(title) : null);
+            nfo.element("season", parseNumber(episodeData.get("season"), "season"));
+            nfo.element("episode", parseNumber(episodeData.get("episode_num"), "episode number"));
+
+            @SuppressWarnings("unchecked")
+            Map<String, Object> info = (Map<String, Object>) episodeData.get("info");
+            if (info != null) {
+                nfo.element("aired", nonBlank(getString(info, "air_date")));
+                nfo.element("plot", nonBlank(getString(info, "plot")));
+                Object rating = info.get("rating");
+                nfo.element("userrating", rating != null ? parseRating(String.valueOf(rating)) : null);
+                nfo.element("director", nonBlank(getString(info, "crew")));
+            } else {
+                nfo.emptyElement("aired");
+                nfo.emptyElement("plot");
+                nfo.emptyElement("userrating");
+                nfo.emptyElement("director");
+            }
+
+            return nfo.finish();
+        } catch (IllegalArgumentException e) {
             log.error("Failed to generate episode NFO", e);
             return null;
         }
@@ -57,292 +95,94 @@ public class NfoGenerator {
      */
     public static String generateMovieNfo(Map<String, Object> movieData) {
         try {
-            MovieNfo nfo = buildMovieNfo(movieData);
-            return XmlUtils.getXmlMapper().writeValueAsString(nfo);
-        } catch (JsonProcessingException e) {
-            log.error("Failed to generate movie NFO", e);
-            return null;
-        }
-    }
-
-    private static TvShowNfo buildTvShowNfo(Map<String, Object> seriesData) {
-        TvShowNfo.TvShowNfoBuilder builder = TvShowNfo.builder();
-
-        // Title
-        String title = getString(seriesData, "name");
-        if (StringUtils.isNotBlank(title)) {
-            builder.title(cleanTitle(title));
-        }
-
-        // Plot
-        String plot = getString(seriesData, "plot");
-        if (StringUtils.isNotBlank(plot)) {
-            builder.plot(plot);
-        }
-
-        // Premiered
-        String premiered = getString(seriesData, "releaseDate");
-        if (premiered == null) {
-            premiered = getString(seriesData, "release_date");
-        }
-        if (StringUtils.isNotBlank(premiered)) {
-            builder.premiered(premiered);
-        }
-
-        // Rating
-        String rating = getString(seriesData, "rating");
-        if (StringUtils.isNotBlank(rating)) {
-            try {
-                builder.userrating(Double.parseDouble(rating));
-            } catch (NumberFormatException e) {
-                log.debug("Failed to parse rating: {}", rating);
-            }
-        }
-
-        // Unique IDs
-        List<TvShowNfo.UniqueId> uniqueIds = new ArrayList<>();
-        String tmdbId = getString(seriesData, "tmdb");
-        if (StringUtils.isNotBlank(tmdbId)) {
-            uniqueIds.add(TvShowNfo.UniqueId.builder()
-                    .type("tmdb")
-                    .isDefault(true)
-                    .value(tmdbId)
-                    .build());
-        }
-        if (!uniqueIds.isEmpty()) {
-            builder.uniqueids(uniqueIds);
-        }
+            NfoWriter nfo = NfoWriter.start("movie");
 
-        // Genres
-        String genre = getString(seriesData, "genre");
-        if (StringUtils.isNotBlank(genre)) {
-            List<String> genres = Arrays.stream(genre.split("/"))
-                    .map(String::trim)
-                    .filter(StringUtils::isNotBlank)
-                    .collect(Collectors.toList());
-            if (!genres.isEmpty()) {
-                builder.genres(genres);
-            }
-        }
+            String name = getString(movieData, "name");
+            String title = StringUtils.isNotBlank(name) ? cleanTitle(name) : null;
+            nfo.element("title", title);
+            nfo.element("originaltitle", title);
+            nfo.element("plot", nonBlank(getString(movieData, "plot")));
 
-        // Actors
-        String cast = getString(seriesData, "cast");
-        if (StringUtils.isNotBlank(cast)) {
-            List<TvShowNfo.Actor> actors = Arrays.stream(cast.split(","))
-                    .map(String::trim)
-                    .filter(StringUtils::isNotBlank)
-                    .map(name -> TvShowNfo.Actor.builder().name(name).build())
-                    .collect(Collectors.toList());
-            if (!actors.isEmpty()) {
-                builder.actors(actors);
-            }
-        }
+            String premiered = nonBlank(getPremiered(movieData));
+            nfo.element("premiered", premiered);
+            nfo.element("year", premiered != null && premiered.length() >= 4 ? premiered.substring(0, 4) : null);
+            nfo.element("userrating", parseRating(getString(movieData, "rating")));
 
-        // Directors
-        String director = getString(seriesData, "director");
-        if (StringUtils.isNotBlank(director)) {
-            List<String> directors = Arrays.stream(director.split(","))
-                    .map(String::trim)
-                    .filter(StringUtils::isNotBlank)
-                    .collect(Collectors.toList());
-            if (!directors.isEmpty()) {
-                builder.directors(directors);
+            String tmdbId = getString(movieData, "tmdb");
+            String imdbId = getString(movieData, "imdb_id");
+            if (imdbId == null) {
+                imdbId = getString(movieData, "imdb");
             }
-        }
-
-        // Runtime
-        String episodeRunTime = getString(seriesData, "episode_run_time");
-        if (StringUtils.isNotBlank(episodeRunTime)) {
-            try {
-                builder.runtime(Integer.parseInt(episodeRunTime));
-            } catch (NumberFormatException e) {
-                log.debug("Failed to parse runtime: {}", episodeRunTime);
+            boolean hasTmdbId = StringUtils.isNotBlank(tmdbId);
+            boolean hasImdbId = StringUtils.isNotBlank(imdbId);
+            if (hasTmdbId) {
+                nfo.uniqueId("tmdb", true, tmdbId);
             }
-        }
-
-        return builder.build();
-    }
-
-    private static EpisodeNfo buildEpisodeNfo(Map<String, Object> episodeData) {
-        EpisodeNfo.EpisodeNfoBuilder builder = EpisodeNfo.builder();
-
-        // Title
-        String title = getString(episodeData, "title");
-        if (StringUtils.isNotBlank(title)) {
-            builder.title(extractEpisodeTitle(title));
-        }
-
-        // Season
-        Object seasonObj = episodeData.get("season");
-        if (seasonObj != null) {
-            try {
-                builder.season(Integer.parseInt(String.valueOf(seasonObj)));
-            } catch (NumberFormatException e) {
-                log.debug("Failed to parse season: {}", seasonObj);
-            }
-        }
-
-        // Episode
-        Object episodeNumObj = episodeData.get("episode_num");
-        if (episodeNumObj != null) {
-            try {
-                builder.episode(Integer.parseInt(String.valueOf(episodeNumObj)));
-            } catch (NumberFormatException e) {
-                log.debug("Failed to parse episode number: {}", episodeNumObj);
-            }
-        }
-
-        // Get info map
-        @SuppressWarnings("unchecked")
-        Map<String, Object> info = (Map<String, Object>) episodeData.get("info");
-        if (info != null) {
-            // Aired date
-            String airDate = getString(info, "air_date");
-            if (StringUtils.isNotBlank(airDate)) {
-                builder.aired(airDate);
+            if (hasImdbId) {
+                nfo.uniqueId("imdb", false, imdbId);
             }
-
-            // Plot
-            String plot = getString(info, "plot");
-            if (StringUtils.isNotBlank(plot)) {
-                builder.plot(plot);
+            if (!hasTmdbId && !hasImdbId) {
+                nfo.emptyElement("uniqueid");
             }
 
-            // Rating
-            Object ratingObj = info.get("rating");
-            if (ratingObj != null) {
-                try {
-                    builder.userrating(Double.parseDouble(String.valueOf(ratingObj)));
-                } catch (NumberFormatException e) {
-                    log.debug("Failed to parse rating: {}", ratingObj);
-                }
-            }
+            nfo.list("genre", null, getString(movieData, "genre"), '/');
+            nfo.list("actor", "name", getString(movieData, "cast"), ',');
+            nfo.list("director", null, getString(movieData, "director"), ',');
+            nfo.element("runtime", parseRuntime(getString(movieData, "runtime")));
 
-            // Director/Crew
-            String crew = getString(info, "crew");
-            if (StringUtils.isNotBlank(crew)) {
-                builder.director(crew);
-            }
+            return nfo.finish();
+        } catch (IllegalArgumentException e) {
+            log.error("Failed to generate movie NFO", e);
+            return null;
         }
-
-        return builder.build();
     }
 
-    private static MovieNfo buildMovieNfo(Map<String, Object> movieData) {
-        MovieNfo.MovieNfoBuilder builder = MovieNfo.builder();
-
-        // Title
-        String name = getString(movieData, "name");
-        if (StringUtils.isNotBlank(name)) {
-            String cleanedTitle = cleanTitle(name);
-            builder.title(cleanedTitle);
-            builder.originaltitle(cleanedTitle);
-        }
-
-        // Plot
-        String plot = getString(movieData, "plot");
-        if (StringUtils.isNotBlank(plot)) {
-            builder.plot(plot);
-        }
-
-        // Premiered and year
-        String premiered = getString(movieData, "releaseDate");
+    private static String getPremiered(Map<String, Object> data) {
+        String premiered = getString(data, "releaseDate");
         if (premiered == null) {
-            premiered = getString(movieData, "release_date");
-        }
-        if (StringUtils.isNotBlank(premiered)) {
-            builder.premiered(premiered);
-            if (premiered.length() >= 4) {
-                builder.year(premiered.substring(0, 4));
-            }
+            premiered = getString(data, "release_date");
         }
+        return premiered;
+    }
 
-        // Rating
-        String rating = getString(movieData, "rating");
-        if (StringUtils.isNotBlank(rating)) {
-            try {
-                builder.userrating(Double.parseDouble(rating));
-            } catch (NumberFormatException e) {
-                log.debug("Failed to parse rating: {}", rating);
-            }
-        }
-
-        // Unique IDs
-        List<MovieNfo.UniqueId> uniqueIds = new ArrayList<>();
-
-        String tmdbId = getString(movieData, "tmdb");
-        if (StringUtils.isNotBlank(tmdbId)) {
-            uniqueIds.add(MovieNfo.UniqueId.builder()
-                    .type("tmdb")
-                    .isDefault(true)
-                    .value(tmdbId)
-                    .build());
-        }
+    private static String nonBlank(String value) {
+        return StringUtils.isNotBlank(value) ? value : null;
+    }
 
-        String imdbId = getString(movieData, "imdb_id");
-        if (imdbId == null) {
-            imdbId = getString(movieData, "imdb");
-        }
-        if (StringUtils.isNotBlank(imdbId)) {
-            uniqueIds.add(MovieNfo.UniqueId.builder()
-                    .type("imdb")
-                    .isDefault(false)
-                    .value(imdbId)
-                    .build());
+    private static Double parseRating(String rating) {
+        if (StringUtils.isBlank(rating)) {
+            return null;
         }
-
-        if (!uniqueIds.isEmpty()) {
-            builder.uniqueids(uniqueIds);
+        try {
+            return Double.parseDouble(rating);
+        } catch (NumberFormatException e) {
+            log.debug("Failed to parse rating: {}", rating);
+            return null;
         }
+    }
 
-        // Genres
-        String genre = getString(movieData, "genre");
-        if (StringUtils.isNotBlank(genre)) {
-            List<String> genres = Arrays.stream(genre.split("/"))
-                    .map(String::trim)
-                    .filter(StringUtils::isNotBlank)
-                    .collect(Collectors.toList());
-            if (!genres.isEmpty()) {
-                builder.genres(genres);
-            }
+    private static Integer parseRuntime(String runtime) {
+        if (StringUtils.isBlank(runtime)) {
+            return null;
         }
-
-        // Actors
-        String cast = getString(movieData, "cast");
-        if (StringUtils.isNotBlank(cast)) {
-            List<MovieNfo.Actor> actors = Arrays.stream(cast.split(","))
-                    .map(String::trim)
-                    .filter(StringUtils::isNotBlank)
-                    .map(actorName -> MovieNfo.Actor.builder().name(actorName).build())
-                    .collect(Collectors.toList());
-            if (!actors.isEmpty()) {
-                builder.actors(actors);
-            }
+        try {
+            return Integer.parseInt(runtime);
+        } catch (NumberFormatException e) {
+            log.debug("Failed to parse runtime: {}", runtime);
+            return null;
         }
+    }
 
-        // Directors
-        String director = getString(movieData, "director");
-        if (StringUtils.isNotBlank(director)) {
-            List<String> directors = Arrays.stream(director.split(","))
-                    .map(String::trim)
-                    .filter(StringUtils::isNotBlank)
-                    .collect(Collectors.toList());
-            if (!directors.isEmpty()) {
-                builder.directors(directors);
-            }
+    private static Integer parseNumber(Object value, String description) {
+        if (value == null) {
+            return null;
         }
-
-        // Runtime
-        String runtime = getString(movieData, "runtime");
-        if (StringUtils.isNotBlank(runtime)) {
-            try {
-                builder.runtime(Integer.parseInt(runtime));
-            } catch (NumberFormatException e) {
-                log.debug("Failed to parse runtime: {}", runtime);
-            }
+        try {
+            return Integer.parseInt(String.valueOf(value));
+        } catch (NumberFormatException e) {
+            log.debug("Failed to parse {}: {}", description, value);
+            return null;
         }
-
-        return builder.build();
     }
 
     /**
@@ -353,9 +193,16 @@ public class NfoGenerator {
             return null;
         }
         // Remove patterns like (MULTI), [4K], |IMAX UHD|, etc.
-        title = title.replaceAll("\\s*\\([^)]*\\)\\s*$", ""); // Remove trailing (...)
-        title = title.replaceAll("\\s*\\[[^]]*\\]\\s*$", ""); // Remove trailing [...]
-        title = title.replaceAll("^\\|[^|]*\\|\\s*", "");     // Remove leading |...|
+        // Most titles have none of them, only run the patterns that can match
+        if (title.indexOf(')') >= 0) {
+            title = TRAILING_PARENTHESES.matcher(title).replaceAll("");
+        }
+        if (title.indexOf(']') >= 0) {
+            title = TRAILING_BRACKETS.matcher(title).replaceAll("");
+        }
+        if (title.startsWith("|")) {
+            title = LEADING_PIPES.matcher(title).replaceAll("");
+        }
         return title.trim();
     }
 
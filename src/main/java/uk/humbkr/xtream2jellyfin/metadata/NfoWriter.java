@@ -0,0 +1,249 @@
+package uk.humbkr.xtream2jellyfin.metadata;
+
+/**
+ * Writes NFO XML directly to a buffer reused by the thread.
+ * <p>
+ * The output is the same as what the Jackson XmlMapper wrote for the NFO objects, so that NFO files written by
+ * earlier versions are not seen as changed: two spaces indentation, a self-closing element for a missing value,
+ * and the same escaping. Characters that are not allowed in XML 1.0 make the writer throw an
+ * {@link IllegalArgumentException}, as the mapper did.
+ */
+final class NfoWriter {
+
+    private static final int INITIAL_CAPACITY = 4 * 1024;
+
+    private static final int MAX_RETAINED_CAPACITY = 256 * 1024;
+
+    private static final ThreadLocal<NfoWriter> WRITERS = ThreadLocal.withInitial(NfoWriter::new);
+
+    private static final int CHUNKED_TEXT_LENGTH = 12;
+
+    private static final int TEXT_CHUNK_SIZE = 512;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+
+    private String root;
+
+    private NfoWriter() {
+    }
+
+    /**
+     * Start a document with the given root element, discarding anything the thread's writer held.
+     */
+    static NfoWriter start(String root) {
+        NfoWriter writer = WRITERS.get();
+        if (writer.buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            // Do not keep a large buffer around for the rare huge plot
+            writer.buffer = new StringBuilder(INITIAL_CAPACITY);
+        }
+        writer.buffer.setLength(0);
+        writer.root = root;
+        writer.buffer.append('<').append(root).append(">\n");
+        return writer;
+    }
+
+    String finish() {
+        buffer.append("</").append(root).append(">\n");
+        return buffer.toString();
+    }
+
+    void element(String name, String value) {
+        if (value == null) {
+            emptyElement(name);
+            return;
+        }
+        openElement("  ", name);
+        text(value, 0, value.length());
+        closeElement(name);
+    }
+
+    void element(String name, Integer value) {
+        if (value == null) {
+            emptyElement(name);
+            return;
+        }
+        openElement("  ", name);
+        buffer.append(value.intValue());
+        closeElement(name);
+    }
+
+    void element(String name, Double value) {
+        if (value == null) {
+            emptyElement(name);
+            return;
+        }
+        openElement("  ", name);
+        buffer.append(value.doubleValue());
+        closeElement(name);
+    }
+
+    void emptyElement(String name) {
+        buffer.append("  <").append(name).append("/>\n");
+    }
+
+    /**
+     * Write a uniqueid element, the type is written as is and must not need escaping.
+     */
+    void uniqueId(String type, boolean isDefault, String value) {
+        buffer.append("  <uniqueid type=\"").append(type).append("\" default=\"").append(isDefault).append("\">\n");
+        openElement("    ", "value");
+        text(value, 0, value.length());
+        closeElement("value");
+        buffer.append("  </uniqueid>\n");
+    }
+
+    /**
+     * Write an element per non-blank trimmed item of a separated list, or an empty element if there is none.
+     *
+     * @param childName name of the element wrapping each item inside the element, null to write items directly
+     */
+    void list(String name, String childName, String values, char separator) {
+        boolean written = false;
+
+        if (values != null) {
+            int start = 0;
+            while (start <= values.length()) {
+                int end = values.indexOf(separator, start);
+                if (end < 0) {
+                    end = values.length();
+                }
+
+                // Same as String.trim() followed by StringUtils.isNotBlank()
+                int from = start;
+                int to = end;
+                while (from < to && values.charAt(from) <= ' ') {
+                    from++;
+                }
+                while (to > from && values.charAt(to - 1) <= ' ') {
+                    to--;
+                }
+                if (!isBlank(values, from, to)) {
+                    item(name, childName, values, from, to);
+                    written = true;
+                }
+
+                start = end + 1;
+            }
+        }
+
+        if (!written) {
+            emptyElement(name);
+        }
+    }
+
+    private void item(String name, String childName, String values, int from, int to) {
+        if (childName == null) {
+            openElement("  ", name);
+            text(values, from, to);
+            closeElement(name);
+            return;
+        }
+
+        buffer.append("  <").append(name).append(">\n");
+        openElement("    ", childName);
+        text(values, from, to);
+        closeElement(childName);
+        buffer.append("  </").append(name).append(">\n");
+    }
+
+    private void openElement(String indent, String name) {
+        buffer.append(indent).append('<').append(name).append('>');
+    }
+
+    private void closeElement(String name) {
+        buffer.append("</").append(name).append(">\n");
+    }
+
+    private void text(String value, int from, int to) {
+        // The mapper wrote values of 12 characters or more in chunks of 512, escaping a '>' that could end "]]>"
+        // differently: in a chunk it is also escaped at the start of the chunk and right after an escaped character
+        boolean chunked = to - from >= CHUNKED_TEXT_LENGTH;
+        int start = from;
+        char previous = 0;
+        boolean previousEscaped = false;
+
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            if (c > '>' && c < 0x7f) {
+                // Letters and most punctuation, nothing to check
+                previous = c;
+                previousEscaped = false;
+                continue;
+            }
+
+            String escaped;
+            if (c == '>') {
+                boolean quoted = i == from || previous == ']'
+                        || (chunked && (previousEscaped || (i - from) % TEXT_CHUNK_SIZE == 0));
+                escaped = quoted ? "&gt;" : null;
+            } else {
+                escaped = escape(c);
+            }
+            previous = c;
+            previousEscaped = escaped != null;
+            if (escaped == null) {
+                continue;
+            }
+
+            buffer.append(value, start, i);
+            if (escaped.isEmpty()) {
+                appendCharacterReference(c);
+            } else {
+                buffer.append(escaped);
+            }
+            start = i + 1;
+        }
+
+        buffer.append(value, start, to);
+    }
+
+    /**
+     * @return null if the character is written as is, an empty string if it is written as a character reference
+     */
+    private static String escape(char c) {
+        if (c < 0x20) {
+            if (c == '\n' || c == '\t') {
+                return null;
+            }
+            if (c == '\r') {
+                return "";
+            }
+            throw new IllegalArgumentException("Invalid character 0x" + Integer.toHexString(c) + " in NFO text");
+        }
+        if (c == '&') {
+            return "&amp;";
+        }
+        if (c == '<') {
+            return "&lt;";
+        }
+        if ((c >= 0x7f && c <= 0x9f) || c >= 0xfffe) {
+            return "";
+        }
+        return null;
+    }
+
+    private void appendCharacterReference(char c) {
+        buffer.append("&#x");
+        boolean digits = false;
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            int digit = (c >> shift) & 0xf;
+            if (digit != 0 || digits || shift == 0) {
+                buffer.append(HEX_DIGITS[digit]);
+                digits = true;
+            }
+        }
+        buffer.append(';');
+    }
+
+    private static boolean isBlank(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
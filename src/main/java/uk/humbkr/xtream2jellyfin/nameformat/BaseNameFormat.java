@@ -1,7 +1,8 @@
 package uk.humbkr.xtream2jellyfin.nameformat;
 
-import uk.humbkr.xtream2jellyfin.common.RegexUtils;
+import uk.humbkr.xtream2jellyfin.common.PatternRewriter;
 
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 abstract class BaseNameFormat {
@@ -20,22 +21,16 @@ abstract class BaseNameFormat {
             Map.entry("\t", "")
     );
 
-    protected final Map<String, String> regexPatterns;
+    private static final PatternRewriter EMPTY_MARKERS = PatternRewriter.compile(emptyMarkerPatterns());
+
+    protected final PatternRewriter regexPatterns;
 
     protected BaseNameFormat(Map<String, String> regexPatterns) {
-        this.regexPatterns = regexPatterns != null ? regexPatterns : Map.of();
+        this.regexPatterns = PatternRewriter.compile(regexPatterns);
     }
 
     protected String applyRegexPatterns(String text) {
-        if (regexPatterns.isEmpty()) {
-            return text.trim();
-        }
-
-        String result = text;
-        for (Map.Entry<String, String> entry : regexPatterns.entrySet()) {
-            result = RegexUtils.replaceAll(result, entry.getKey(), entry.getValue());
-        }
-        return result.trim();
+        return regexPatterns.apply(text).trim();
     }
 
     protected String sanitizeForJellyfin(String text) {
@@ -49,23 +44,25 @@ abstract class BaseNameFormat {
     }
 
     protected String cleanupEmptyMarkers(String text) {
-        // Remove empty brackets: [], ()
-        String result = text;
+        return EMPTY_MARKERS.apply(text).trim();
+    }
+
+    private static Map<String, String> emptyMarkerPatterns() {
+        Map<String, String> patterns = new LinkedHashMap<>();
 
         // Remove brackets with only hyphens/spaces: [-], [ - ], etc.
-        result = RegexUtils.replaceAll(result, "\\[\\s*-\\s*\\]", "");
+        patterns.put("\\[\\s*-\\s*\\]", "");
 
         // Remove empty square brackets with optional space
-        result = RegexUtils.replaceAll(result, "\\[\\s*\\]", "");
+        patterns.put("\\[\\s*\\]", "");
 
         // Remove empty parentheses with optional space
-        result = RegexUtils.replaceAll(result, "\\(\\s*\\)", "");
+        patterns.put("\\(\\s*\\)", "");
 
         // Normalize multiple spaces to single space
-        result = RegexUtils.replaceAll(result, "\\s+", " ");
+        patterns.put("\\s+", " ");
 
-        // Trim leading/trailing whitespace
-        return result.trim();
+        return patterns;
     }
 
 }
@@ -3,16 +3,63 @@ package uk.humbkr.xtream2jellyfin.nameformat;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringSubstitutor;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class StreamNameFormat extends BaseNameFormat {
 
+    private static final String PLACEHOLDER_PREFIX = "${";
+
+    private static final char PLACEHOLDER_SUFFIX = '}';
+
+    private enum Placeholder {
+        NAME("name"),
+        YEAR("year"),
+        EXTERNAL_PROVIDER_ID("externalProviderId"),
+        EXTERNAL_ID("externalId");
+
+        private final String key;
+
+        Placeholder(String key) {
+            this.key = key;
+        }
+
+        private static Placeholder of(String key) {
+            for (Placeholder placeholder : values()) {
+                if (placeholder.key.equals(key)) {
+                    return placeholder;
+                }
+            }
+            return null;
+        }
+    }
+
     private final String patternTemplate;
 
+    // The template split at its placeholders, null if it can only be rendered by StringSubstitutor
+    private final String[] literals;
+
+    private final Placeholder[] placeholders;
+
+    private final int literalsLength;
+
     public StreamNameFormat(String patternTemplate, Map<String, String> regexPatterns) {
         super(regexPatterns);
         this.patternTemplate = patternTemplate;
+
+        List<String> templateLiterals = new ArrayList<>();
+        List<Placeholder> templatePlaceholders = new ArrayList<>();
+        if (compile(patternTemplate, templateLiterals, templatePlaceholders)) {
+            this.literals = templateLiterals.toArray(new String[0]);
+            this.placeholders = templatePlaceholders.toArray(new Placeholder[0]);
+            this.literalsLength = templateLiterals.stream().mapToInt(String::length).sum();
+        } else {
+            this.literals = null;
+            this.placeholders = null;
+            this.literalsLength = 0;
+        }
     }
 
     public String format(String streamName, StreamNameFormatContext context) {
@@ -34,28 +81,88 @@ public class StreamNameFormat extends BaseNameFormat {
     }
 
     private String applyTemplate(String cleanedName, StreamNameFormatContext context) {
-        // Create placeholder value map with default empty strings
+        // Missing values are empty strings
         // This keeps templates simple (no need for ${var:-} syntax) for end users
-        Map<String, String> placeholderValues = new HashMap<>(4);
-        placeholderValues.put("name", cleanedName);
-        placeholderValues.put("year", "");
-        placeholderValues.put("externalProviderId", "");
-        placeholderValues.put("externalId", "");
-
+        String year = "";
+        String externalProviderId = "";
+        String externalId = "";
         if (context != null) {
-            putIfNotBlank(placeholderValues, "year", context.getYear());
-            putIfNotBlank(placeholderValues, "externalProviderId", context.getExternalProviderId());
-            putIfNotBlank(placeholderValues, "externalId", context.getExternalId());
+            year = valueOrEmpty(context.getYear());
+            externalProviderId = valueOrEmpty(context.getExternalProviderId());
+            externalId = valueOrEmpty(context.getExternalId());
+        }
+
+        // StringSubstitutor also substitutes placeholders found in values, and a '$' before a placeholder escapes it,
+        // leave these rare names to it to get the same result
+        if (literals == null || hasDollar(cleanedName) || hasDollar(year)
+                || hasDollar(externalProviderId) || hasDollar(externalId)) {
+            return substitute(cleanedName, year, externalProviderId, externalId);
         }
 
-        // Use StringSubstitutor to replace placeholders
+        StringBuilder result = new StringBuilder(literalsLength + cleanedName.length()
+                + year.length() + externalProviderId.length() + externalId.length());
+        for (int i = 0; i < placeholders.length; i++) {
+            result.append(literals[i]);
+            result.append(switch (placeholders[i]) {
+                case NAME -> cleanedName;
+                case YEAR -> year;
+                case EXTERNAL_PROVIDER_ID -> externalProviderId;
+                case EXTERNAL_ID -> externalId;
+            });
+        }
+        result.append(literals[placeholders.length]);
+        return result.toString();
+    }
+
+    private String substitute(String cleanedName, String year, String externalProviderId, String externalId) {
+        Map<String, String> placeholderValues = new HashMap<>(8);
+        placeholderValues.put(Placeholder.NAME.key, cleanedName);
+        placeholderValues.put(Placeholder.YEAR.key, year);
+        placeholderValues.put(Placeholder.EXTERNAL_PROVIDER_ID.key, externalProviderId);
+        placeholderValues.put(Placeholder.EXTERNAL_ID.key, externalId);
         return new StringSubstitutor(placeholderValues).replace(patternTemplate);
     }
 
-    private void putIfNotBlank(Map<String, String> map, String key, String value) {
-        if (StringUtils.isNotBlank(value)) {
-            map.put(key, value);
+    /**
+     * Split a template into literals and placeholders.
+     *
+     * @return false if the template uses more than plain known placeholders (escapes, defaults, unknown or nested
+     * variables), it is then rendered by StringSubstitutor
+     */
+    private static boolean compile(String template, List<String> literals, List<Placeholder> placeholders) {
+        if (template == null || template.contains("$" + PLACEHOLDER_PREFIX)) {
+            return false;
+        }
+
+        int start = 0;
+        while (true) {
+            int prefix = template.indexOf(PLACEHOLDER_PREFIX, start);
+            if (prefix < 0) {
+                literals.add(template.substring(start));
+                return true;
+            }
+
+            int suffix = template.indexOf(PLACEHOLDER_SUFFIX, prefix + PLACEHOLDER_PREFIX.length());
+            if (suffix < 0) {
+                return false;
+            }
+            Placeholder placeholder = Placeholder.of(template.substring(prefix + PLACEHOLDER_PREFIX.length(), suffix));
+            if (placeholder == null) {
+                return false;
+            }
+
+            literals.add(template.substring(start, prefix));
+            placeholders.add(placeholder);
+            start = suffix + 1;
         }
     }
 
+    private static String valueOrEmpty(String value) {
+        return StringUtils.isNotBlank(value) ? value : "";
+    }
+
+    private static boolean hasDollar(String value) {
+        return value.indexOf('$') >= 0;
+    }
+
 }
@@ -0,0 +1,123 @@
+package uk.humbkr.xtream2jellyfin.pipeline;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One stage of a processing pipeline: a fixed set of threads fed by a bounded queue.
+ * <p>
+ * Submitting blocks while the queue is full, so a slow stage throttles the stages feeding it
+ * instead of letting work pile up in memory.
+ */
+@Slf4j
+public class PipelineStage implements AutoCloseable {
+
+    @Getter
+    private final String name;
+
+    private final int capacity;
+
+    private final ExecutorService executor;
+
+    // One permit per task that is queued or running
+    private final Semaphore permits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger maxQueued = new AtomicInteger();
+
+    private final LongAdder tasks = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder busyNanos = new LongAdder();
+
+    private final LongAdder blockedNanos = new LongAdder();
+
+    private final long startTime = System.nanoTime();
+
+    /**
+     * @param threads   number of tasks run at the same time
+     * @param queueSize number of tasks waiting for a thread before submitting blocks
+     */
+    public PipelineStage(String name, int threads, int queueSize) {
+        this.name = name;
+        this.capacity = threads + queueSize;
+        this.permits = new Semaphore(capacity);
+
+        ThreadFactory threadFactory = Thread.ofPlatform().name(name + "-", 0).daemon(true).factory();
+        this.executor = Executors.newFixedThreadPool(threads, threadFactory);
+    }
+
+    /**
+     * Queue a task, waiting for room in the queue if needed.
+     * A failing task is logged, it does not affect the other tasks.
+     */
+    public void submit(Runnable task) {
+        if (!permits.tryAcquire()) {
+            long waitStart = System.nanoTime();
+            permits.acquireUninterruptibly();
+            blockedNanos.add(System.nanoTime() - waitStart);
+        }
+
+        maxQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+
+        executor.execute(() -> {
+            queued.decrementAndGet();
+            long taskStart = System.nanoTime();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                failures.increment();
+                log.error("[{}] Task failed: {}", name, e.getMessage(), e);
+            } finally {
+                busyNanos.add(System.nanoTime() - taskStart);
+                tasks.increment();
+                permits.release();
+            }
+        });
+    }
+
+    /**
+     * Wait until every submitted task has run. Tasks must not be submitted concurrently.
+     */
+    public void awaitIdle() {
+        permits.acquireUninterruptibly(capacity);
+        permits.release(capacity);
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public long getTasks() {
+        return tasks.sum();
+    }
+
+    /**
+     * Stop accepting tasks and wait until the queued and running ones have run.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    @Override
+    public String toString() {
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        long taskCount = getTasks();
+
+        return String.format("%s: Tasks: %d, Failed: %d, Throughput: %.1f/s, Busy: %.3f s, " +
+                        "Max queue: %d, Producers blocked: %.3f s",
+                name, taskCount, failures.sum(), elapsedSeconds > 0 ? taskCount / elapsedSeconds : 0.0,
+                busyNanos.sum() / 1e9, maxQueued.get(), blockedNanos.sum() / 1e9);
+    }
+
+}
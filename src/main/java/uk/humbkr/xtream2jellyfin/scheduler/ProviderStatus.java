@@ -0,0 +1,47 @@
+package uk.humbkr.xtream2jellyfin.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Snapshot of a provider schedule, as reported by the status endpoint.
+ */
+@Getter
+@Builder
+public class ProviderStatus {
+
+    private final String name;
+
+    private final boolean running;
+
+    @JsonProperty("next_run")
+    private final String nextRun;
+
+    @JsonProperty("last_start")
+    private final String lastStart;
+
+    @JsonProperty("last_end")
+    private final String lastEnd;
+
+    @JsonProperty("last_duration_seconds")
+    private final Double lastDurationSeconds;
+
+    @JsonProperty("last_succeeded")
+    private final Boolean lastSucceeded;
+
+    private final int runs;
+
+    private final int failures;
+
+    @JsonProperty("skipped_overlaps")
+    private final int skippedOverlaps;
+
+    @JsonProperty("interval_minutes")
+    private final long intervalMinutes;
+
+    private final List<String> windows;
+
+}
@@ -0,0 +1,182 @@
+package uk.humbkr.xtream2jellyfin.scheduler;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The schedule and run state of one provider.
+ * <p>
+ * Runs are planned at a fixed rate from the previous planned start, before jitter, so the schedule does not drift.
+ * A run still going when the next one is due makes the scheduler skip that one.
+ */
+public class ProviderTask {
+
+    @Getter
+    private final String name;
+
+    private final BooleanSupplier sync;
+
+    @Getter
+    private final Duration interval;
+
+    @Getter
+    private final List<SyncWindow> windows;
+
+    private final Duration jitter;
+
+    private final ZoneId zone;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private final AtomicInteger skippedOverlaps = new AtomicInteger();
+
+    private volatile Instant nextRun;
+
+    // Start of the last planned run before jitter, planned by one thread at a time
+    private Instant plannedBase;
+
+    private volatile Instant lastStart;
+
+    private volatile Instant lastEnd;
+
+    private volatile Boolean lastSucceeded;
+
+    /**
+     * @param sync runs one sync of the provider, returns false if it failed
+     */
+    public ProviderTask(String name, BooleanSupplier sync, Duration interval, List<SyncWindow> windows,
+                        Duration jitter, ZoneId zone) {
+        this.name = name;
+        this.sync = sync;
+        this.interval = interval;
+        this.windows = List.copyOf(windows);
+        this.jitter = jitter;
+        this.zone = zone;
+    }
+
+    /**
+     * Plan the first run, no earlier than the given time.
+     */
+    public Instant planFirstRun(Instant earliest) {
+        return planRun(earliest);
+    }
+
+    /**
+     * Plan the run following the last planned one, skipping the runs that would start before the given time.
+     * Must follow {@link #planFirstRun(Instant)}.
+     */
+    public Instant planNextRun(Instant notBefore) {
+        Instant run;
+        do {
+            run = planRun(plannedBase.plus(interval));
+        } while (!run.isAfter(notBefore));
+        return run;
+    }
+
+    /**
+     * @return the start of the run, jittered from the given base, or from the next window opening if that is closed
+     */
+    private Instant planRun(Instant base) {
+        plannedBase = base;
+        Instant candidate = base.plus(randomJitter());
+        if (windows.isEmpty()) {
+            return candidate;
+        }
+
+        ZonedDateTime dateTime = candidate.atZone(zone);
+        ZonedDateTime opening = null;
+        for (SyncWindow window : windows) {
+            if (window.contains(dateTime)) {
+                return candidate;
+            }
+            ZonedDateTime windowOpening = window.nextOpening(dateTime);
+            if (opening == null || windowOpening.isBefore(opening)) {
+                opening = windowOpening;
+            }
+        }
+
+        // Spread providers waiting for the same window opening, following runs are planned from the opening
+        plannedBase = opening.toInstant();
+        return plannedBase.plus(randomJitter());
+    }
+
+    private Duration randomJitter() {
+        long jitterMillis = jitter.toMillis();
+        return jitterMillis > 0 ? Duration.ofMillis(ThreadLocalRandom.current().nextLong(jitterMillis + 1)) : Duration.ZERO;
+    }
+
+    /**
+     * @return false if the previous run is still going, the run is then counted as skipped
+     */
+    boolean tryStart() {
+        if (!running.compareAndSet(false, true)) {
+            skippedOverlaps.incrementAndGet();
+            return false;
+        }
+        lastStart = Instant.now();
+        return true;
+    }
+
+    /**
+     * Run the sync, must follow a successful {@link #tryStart()}.
+     */
+    void run() {
+        boolean succeeded = false;
+        try {
+            succeeded = sync.getAsBoolean();
+        } finally {
+            lastSucceeded = succeeded;
+            if (!succeeded) {
+                failures.incrementAndGet();
+            }
+            runs.incrementAndGet();
+            lastEnd = Instant.now();
+            running.set(false);
+        }
+    }
+
+    void setNextRun(Instant nextRun) {
+        this.nextRun = nextRun;
+    }
+
+    public ProviderStatus getStatus() {
+        Instant start = lastStart;
+        Instant end = lastEnd;
+        boolean isRunning = running.get();
+
+        return ProviderStatus.builder()
+                .name(name)
+                .running(isRunning)
+                .nextRun(toString(nextRun))
+                .lastStart(toString(start))
+                .lastEnd(toString(end))
+                .lastDurationSeconds(start != null && end != null && !isRunning
+                        ? Duration.between(start, end).toMillis() / 1000.0 : null)
+                .lastSucceeded(lastSucceeded)
+                .runs(runs.get())
+                .failures(failures.get())
+                .skippedOverlaps(skippedOverlaps.get())
+                .intervalMinutes(interval.toMinutes())
+                .windows(windows.stream().map(SyncWindow::getDefinition).toList())
+                .build();
+    }
+
+    private String toString(Instant instant) {
+        return instant != null ? instant.truncatedTo(ChronoUnit.SECONDS).atZone(zone).toOffsetDateTime().toString() : null;
+    }
+
+}
@@ -0,0 +1,63 @@
+package uk.humbkr.xtream2jellyfin.scheduler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.common.JsonUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+
+/**
+ * Reports the scheduler state as JSON on GET /status.
+ */
+@Slf4j
+public class StatusServer implements AutoCloseable {
+
+    private final ObjectMapper objectMapper = JsonUtils.initializeJsonMapper();
+
+    private final SyncScheduler scheduler;
+
+    private final HttpServer server;
+
+    public StatusServer(SyncScheduler scheduler, int port) throws IOException {
+        this.scheduler = scheduler;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        this.server.createContext("/status", this::handleStatus);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public void start() {
+        server.start();
+        log.info("Status available at http://localhost:{}/status", server.getAddress().getPort());
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] body = objectMapper.writeValueAsBytes(scheduler.getStatuses());
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Failed to send status", e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+}
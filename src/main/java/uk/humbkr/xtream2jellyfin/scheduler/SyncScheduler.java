@@ -0,0 +1,139 @@
+package uk.humbkr.xtream2jellyfin.scheduler;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts provider syncs on virtual threads according to their schedules.
+ * <p>
+ * A single timer thread only plans and triggers runs, the syncs themselves never block it.
+ * The first runs of consecutive providers are staggered so they do not load the network and disk at the same time.
+ */
+@Slf4j
+public class SyncScheduler implements AutoCloseable {
+
+    private final List<ProviderTask> tasks;
+
+    private final Duration stagger;
+
+    private final ScheduledExecutorService timer;
+
+    private final ExecutorService workers;
+
+    public SyncScheduler(List<ProviderTask> tasks, Duration stagger) {
+        this.tasks = List.copyOf(tasks);
+        this.stagger = stagger;
+        this.timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("scheduler").factory());
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sync-", 0).factory());
+    }
+
+    public List<ProviderTask> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * Schedule every provider, runs then repeat until the scheduler is closed.
+     */
+    public void start() {
+        Instant now = Instant.now();
+
+        for (int i = 0; i < tasks.size(); i++) {
+            ProviderTask task = tasks.get(i);
+            Instant firstRun = task.planFirstRun(now.plus(stagger.multipliedBy(i)));
+            schedule(task, firstRun);
+        }
+    }
+
+    /**
+     * Run every provider once, staggered and regardless of their windows, and wait for all of them.
+     */
+    public void runOnce() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(tasks.size());
+
+        for (int i = 0; i < tasks.size(); i++) {
+            ProviderTask task = tasks.get(i);
+            Duration delay = stagger.multipliedBy(i);
+            task.setNextRun(Instant.now().plus(delay));
+
+            timer.schedule(() -> {
+                task.setNextRun(null);
+                if (task.tryStart()) {
+                    workers.submit(() -> {
+                        try {
+                            runTask(task);
+                        } finally {
+                            done.countDown();
+                        }
+                    });
+                } else {
+                    done.countDown();
+                }
+            }, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        done.await();
+    }
+
+    /**
+     * Block until the scheduler is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        while (!timer.awaitTermination(1, TimeUnit.HOURS)) {
+            // Keep waiting, the scheduler runs until it is closed
+        }
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    private void schedule(ProviderTask task, Instant runAt) {
+        task.setNextRun(runAt);
+        long delay = Math.max(0, Duration.between(Instant.now(), runAt).toMillis());
+
+        log.info("[{}] Next sync at {}", task.getName(), task.getStatus().getNextRun());
+        timer.schedule(() -> trigger(task), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void trigger(ProviderTask task) {
+        // Plan from the planned time rather than the end of the run, so the schedule does not drift
+        Instant nextRun = task.planNextRun(Instant.now());
+
+        if (task.tryStart()) {
+            workers.submit(() -> runTask(task));
+        } else {
+            log.warn("[{}] Previous sync still running, skipping this one", task.getName());
+        }
+
+        schedule(task, nextRun);
+    }
+
+    private void runTask(ProviderTask task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            log.error("[{}] Sync failed: {}", task.getName(), e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+
+    public List<ProviderStatus> getStatuses() {
+        List<ProviderStatus> statuses = new ArrayList<>();
+        for (ProviderTask task : tasks) {
+            statuses.add(task.getStatus());
+        }
+        return statuses;
+    }
+
+}
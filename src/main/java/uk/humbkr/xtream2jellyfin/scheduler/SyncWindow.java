@@ -0,0 +1,146 @@
+package uk.humbkr.xtream2jellyfin.scheduler;
+
+import lombok.Getter;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A daily time range syncs may start in, optionally limited to some days of the week.
+ * <p>
+ * Written as "HH:mm-HH:mm", optionally preceded by days such as "mon-fri" or "sat,sun".
+ * A range ending before it starts runs overnight and belongs to the day it starts on.
+ */
+public class SyncWindow {
+
+    private static final Map<String, DayOfWeek> DAYS = Map.of(
+            "mon", DayOfWeek.MONDAY,
+            "tue", DayOfWeek.TUESDAY,
+            "wed", DayOfWeek.WEDNESDAY,
+            "thu", DayOfWeek.THURSDAY,
+            "fri", DayOfWeek.FRIDAY,
+            "sat", DayOfWeek.SATURDAY,
+            "sun", DayOfWeek.SUNDAY
+    );
+
+    @Getter
+    private final String definition;
+
+    private final Set<DayOfWeek> days;
+
+    private final LocalTime start;
+
+    private final LocalTime end;
+
+    private SyncWindow(String definition, Set<DayOfWeek> days, LocalTime start, LocalTime end) {
+        this.definition = definition;
+        this.days = days;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the definition is not a valid window
+     */
+    public static SyncWindow parse(String definition) {
+        String[] parts = definition.trim().split("\\s+");
+        if (parts.length > 2) {
+            throw new IllegalArgumentException("Invalid sync window: " + definition);
+        }
+
+        Set<DayOfWeek> days = parts.length == 2 ? parseDays(parts[0], definition) : EnumSet.allOf(DayOfWeek.class);
+
+        String[] range = parts[parts.length - 1].split("-");
+        if (range.length != 2) {
+            throw new IllegalArgumentException("Invalid sync window time range: " + definition);
+        }
+
+        try {
+            LocalTime start = LocalTime.parse(range[0]);
+            LocalTime end = LocalTime.parse(range[1]);
+            if (start.equals(end)) {
+                throw new IllegalArgumentException("Empty sync window: " + definition);
+            }
+            return new SyncWindow(definition.trim(), days, start, end);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid sync window time: " + definition, e);
+        }
+    }
+
+    private static Set<DayOfWeek> parseDays(String value, String definition) {
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+
+        for (String item : value.toLowerCase(Locale.ROOT).split(",")) {
+            String[] bounds = item.split("-");
+            DayOfWeek first = parseDay(bounds[0], definition);
+            DayOfWeek last = bounds.length > 1 ? parseDay(bounds[1], definition) : first;
+
+            // Ranges may wrap around the week, such as "fri-mon"
+            DayOfWeek day = first;
+            days.add(day);
+            while (day != last) {
+                day = day.plus(1);
+                days.add(day);
+            }
+        }
+
+        return days;
+    }
+
+    private static DayOfWeek parseDay(String value, String definition) {
+        DayOfWeek day = DAYS.get(value.length() > 3 ? value.substring(0, 3) : value);
+        if (day == null) {
+            throw new IllegalArgumentException("Invalid sync window day '" + value + "': " + definition);
+        }
+        return day;
+    }
+
+    public boolean contains(ZonedDateTime dateTime) {
+        LocalTime time = dateTime.toLocalTime();
+        DayOfWeek day = dateTime.getDayOfWeek();
+
+        if (isOvernight()) {
+            return (days.contains(day) && !time.isBefore(start))
+                    || (days.contains(day.minus(1)) && time.isBefore(end));
+        }
+
+        return days.contains(day) && !time.isBefore(start) && time.isBefore(end);
+    }
+
+    /**
+     * @return the first time the window opens after the given time
+     */
+    public ZonedDateTime nextOpening(ZonedDateTime dateTime) {
+        LocalDate date = dateTime.toLocalDate();
+
+        for (int i = 0; i <= 7; i++) {
+            LocalDate candidateDate = date.plusDays(i);
+            if (days.contains(candidateDate.getDayOfWeek())) {
+                ZonedDateTime opening = candidateDate.atTime(start).atZone(dateTime.getZone());
+                if (opening.isAfter(dateTime)) {
+                    return opening;
+                }
+            }
+        }
+
+        // Not reachable, a window always has at least one day
+        throw new IllegalStateException("Sync window never opens: " + definition);
+    }
+
+    private boolean isOvernight() {
+        return end.isBefore(start);
+    }
+
+    @Override
+    public String toString() {
+        return definition;
+    }
+
+}
@@ -1,36 +1,55 @@
 package uk.humbkr.xtream2jellyfin.streamhandler;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
+import uk.humbkr.xtream2jellyfin.catalog.CatalogEntry;
+import uk.humbkr.xtream2jellyfin.catalog.CatalogReader;
 import uk.humbkr.xtream2jellyfin.common.Constants;
+import uk.humbkr.xtream2jellyfin.common.HashUtils;
 import uk.humbkr.xtream2jellyfin.common.JsonUtils;
+import uk.humbkr.xtream2jellyfin.common.PatternRewriter;
 import uk.humbkr.xtream2jellyfin.common.RegexUtils;
 import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
 import uk.humbkr.xtream2jellyfin.config.MediaSettings;
 import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
 import uk.humbkr.xtream2jellyfin.filemanager.FileManager;
 import uk.humbkr.xtream2jellyfin.filemanager.FileManagerUtils;
+import uk.humbkr.xtream2jellyfin.http.ConditionalCache;
+import uk.humbkr.xtream2jellyfin.http.TeeInputStream;
+import uk.humbkr.xtream2jellyfin.http.XtreamTransport;
 import uk.humbkr.xtream2jellyfin.nameformat.CategoryNameFormat;
 import uk.humbkr.xtream2jellyfin.nameformat.StreamNameFormat;
+import uk.humbkr.xtream2jellyfin.pipeline.PipelineStage;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.time.Duration;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public abstract class BaseStreamsHandler {
 
-    protected final ObjectMapper objectMapper;
+    protected static final int LIST_NOT_MODIFIED = -1;
 
-    protected final HttpClient httpClient;
+    protected final ObjectMapper objectMapper;
 
     protected final FileManager fileManager;
 
+    protected final XtreamTransport transport;
+
+    protected final ConditionalCache conditionalCache;
+
     protected final String providerName;
 
     protected final String username;
@@ -41,6 +60,10 @@ public abstract class BaseStreamsHandler {
 
     protected final Map<String, String> nameCleanupPatterns;
 
+    protected final PatternRewriter nameCleanup;
+
+    protected final String nameTemplate;
+
     protected final List<String> includeCategoryIds;
 
     protected final List<String> excludeCategoryIds;
@@ -63,12 +86,12 @@ public abstract class BaseStreamsHandler {
 
     protected final boolean useCache = Constants.USE_CACHE;
 
-    protected final StreamNameFormat movieNameFormat;
-
-    protected final StreamNameFormat seriesNameFormat;
+    protected final StreamNameFormat streamNameFormat;
 
     protected final CategoryNameFormat categoryNameFormat;
 
+    protected final int configuredMaxConnections;
+
     private final Logger log;
 
     protected String providerUrl;
@@ -79,23 +102,47 @@ public abstract class BaseStreamsHandler {
 
     protected int processNumber = 0;
 
-    protected int streamsCount = 0;
+    protected final AtomicInteger streamsCount = new AtomicInteger();
+
+    protected final AtomicInteger processedCount = new AtomicInteger();
 
-    protected int processedCount = 0;
+    protected final AtomicInteger streamsSkipped = new AtomicInteger();
 
-    protected int streamsSkipped = 0;
+    protected int previousStreamsCount = 0;
 
     protected long processingStartTime = 0;
 
+    protected int maxConnections = 1;
+
+    // True while every conditional request of the current run was answered with 304 Not Modified
+    protected boolean catalogUnchanged = true;
+
+    protected final StreamIndex streamIndex;
+
+    protected final AtomicInteger newCount = new AtomicInteger();
+
+    protected final AtomicInteger changedCount = new AtomicInteger();
+
+    protected final AtomicInteger unchangedCount = new AtomicInteger();
+
+    // Output of the stream being processed by the current thread
+    private final ThreadLocal<ItemOutput> currentItem = new ThreadLocal<>();
+
+    // Pipeline stages of the current run: parsed streams are transformed, then their files are written
+    private PipelineStage transformStage;
+
+    private PipelineStage writeStage;
+
+    private long fetchNanos;
+
     public BaseStreamsHandler(XtreamProviderConfig providerConfig, FileManager fileManager,
-                              GlobalSettings globalSettings, Logger log) {
+                              XtreamTransport transport, GlobalSettings globalSettings, Logger log) {
         this.log = log;
         this.objectMapper = JsonUtils.initializeJsonMapper();
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(30))
-                .build();
 
         this.fileManager = fileManager;
+        this.transport = transport;
+        this.conditionalCache = transport.getConditionalCache();
         this.providerName = Objects.requireNonNull(providerConfig.getName());
         this.writeMetadataJson = globalSettings.isWriteMetadataJson();
         this.writeMetadataNfo = globalSettings.isWriteMetadataNfo();
@@ -104,6 +151,7 @@ public abstract class BaseStreamsHandler {
         this.password = providerConfig.getPassword();
         this.providerUrl = providerConfig.getUrl();
         this.categoryNameCleanupPatterns = providerConfig.getCategoryNameCleanupPatterns();
+        this.configuredMaxConnections = providerConfig.getMaxConnections();
 
         this.cacheDir = Constants.CACHE_DIR + "/" + providerName;
 
@@ -114,6 +162,7 @@ public abstract class BaseStreamsHandler {
 
         this.useServerInfo = mediaSettings.isUseServerInfo();
         this.nameCleanupPatterns = mediaSettings.getNameCleanupPatterns();
+        this.nameTemplate = StringUtils.defaultIfBlank(mediaSettings.getNameTemplate(), Constants.DEFAULT_NAME_TEMPLATE);
         this.includeCategoryIds = mediaSettings.getIncludeCategoryIds();
         this.excludeCategoryIds = mediaSettings.getExcludeCategoryIds();
         this.categoryFolder = mediaSettings.isCategoryFolder();
@@ -123,13 +172,16 @@ public abstract class BaseStreamsHandler {
         this.data = new HashMap<>();
         this.categories = new HashMap<>();
 
-        // Initialize name formatters with default templates
-        String movieTemplate = "${name} (${year}) [${externalProviderId}-${externalId}]";
-        String seriesTemplate = "${name} (${year}) [${externalProviderId}-${externalId}]";
+        this.nameCleanup = PatternRewriter.compile(nameCleanupPatterns);
+        this.streamNameFormat = new StreamNameFormat(nameTemplate, nameCleanupPatterns);
+        this.categoryNameFormat = new CategoryNameFormat(categoryNameCleanupPatterns);
+        if (enabled) {
+            reportUnfilteredPatterns("name_cleanup_patterns", nameCleanup);
+            reportUnfilteredPatterns("category_name_cleanup_patterns",
+                    PatternRewriter.compile(categoryNameCleanupPatterns));
+        }
 
-        this.movieNameFormat = new StreamNameFormat(movieTemplate, mediaSettings.getNameCleanupPatterns());
-        this.seriesNameFormat = new StreamNameFormat(seriesTemplate, mediaSettings.getNameCleanupPatterns());
-        this.categoryNameFormat = new CategoryNameFormat(this.categoryNameCleanupPatterns);
+        this.streamIndex = new StreamIndex(cacheDir, getMediaType());
     }
 
     private MediaSettings getMediaSettingsForType(XtreamProviderConfig config) {
@@ -143,15 +195,10 @@ public abstract class BaseStreamsHandler {
 
     public abstract MediaType getMediaType();
 
-    protected void processItem(Map<String, Object> stream) throws Exception {
+    protected void processItem(CatalogEntry stream) throws Exception {
         // To be overridden by subclasses
     }
 
-    @SuppressWarnings("unchecked")
-    protected List<Map<String, Object>> getStreams() {
-        return (List<Map<String, Object>>) data.get(Constants.MEDIA_RESOLVER_STREAMS);
-    }
-
     @SuppressWarnings("unchecked")
     protected List<Map<String, Object>> getCategories() {
         return (List<Map<String, Object>>) data.get(Constants.MEDIA_RESOLVER_CATEGORIES);
@@ -163,70 +210,203 @@ public abstract class BaseStreamsHandler {
         this.providerUrl = serverProtocol + "://" + url;
     }
 
+    /**
+     * Set the connection limit advertised by the provider, an explicit limit in the configuration takes precedence.
+     */
+    public void setMaxConnections(int providerMaxConnections) {
+        int limit = configuredMaxConnections > 0 ? configuredMaxConnections : providerMaxConnections;
+        this.maxConnections = Math.max(1, limit);
+    }
+
     public void process() {
         try {
             processNumber++;
             processingStartTime = System.currentTimeMillis();
+            catalogUnchanged = true;
+            newCount.set(0);
+            changedCount.set(0);
+            unchangedCount.set(0);
 
             loadData();
             loadCategories();
 
             logInfo("Loading streams");
 
-            processStreams();
+            streamIndex.begin(getOutputSettings());
+            try {
+                startPipeline();
+                processStreams();
+            } finally {
+                // Every file must be written before the index and the file manager consider the run complete,
+                // including when processing failed with tasks still queued
+                stopPipeline();
+            }
+            streamIndex.commit();
 
             long executionTime = System.currentTimeMillis() - processingStartTime;
 
             data.clear();
             categories.clear();
+            if (streamsCount.get() > 0) {
+                previousStreamsCount = streamsCount.get();
+            }
 
-            logInfo(String.format("Complete processing, Total: %d, Processed: %d, Skipped: %d, Duration: %.3f seconds",
-                    streamsCount, processedCount, streamsSkipped, executionTime / 1000.0));
+            logInfo(String.format("Complete processing, Total: %d, Processed: %d, Skipped: %d, " +
+                            "New: %d, Changed: %d, Unchanged: %d, Duration: %.3f seconds",
+                    streamsCount.get(), processedCount.get(), streamsSkipped.get(),
+                    newCount.get(), changedCount.get(), unchangedCount.get(), executionTime / 1000.0));
 
         } catch (Exception ex) {
             logError("Failed to process: " + ex.getMessage(), ex);
         }
     }
 
-    protected void processStreams() {
+    protected void processStreams() throws IOException {
+        resetCounters(0);
+
+        // Streams are parsed one at a time and handed to the transform stage, the full list is never held in memory,
+        // a full transform queue blocks the parser
+        XtreamAction streamsAction = resolvers.get(Constants.MEDIA_RESOLVER_STREAMS);
+        long fetchStart = System.nanoTime();
+        int itemsCount = streamData(XtreamEndpoint.PLAYER, streamsAction, null,
+                stream -> transformStage.submit(() -> handleStream(stream)));
+        fetchNanos = System.nanoTime() - fetchStart;
+        transformStage.awaitIdle();
+
+        if (itemsCount == LIST_NOT_MODIFIED) {
+            logInfo("Provider data not modified, existing files kept");
+            return;
+        }
 
-        // Get reference to streams list before removing from data map
-        @SuppressWarnings("unchecked")
-        List<Map<String, Object>> allStreams = (List<Map<String, Object>>) data.remove(Constants.MEDIA_RESOLVER_STREAMS);
+        logInfo("Total streams available: " + streamsCount.get());
+    }
 
-        // Count total streams
-        int totalStreamsCount = allStreams.size();
+    /**
+     * Directory holding all the files written by this handler.
+     */
+    protected String getOutputDir() {
+        return mediaDir;
+    }
 
-        logInfo("Total streams available: " + totalStreamsCount);
+    /**
+     * Called when the streams list is not modified. If nothing else changed since the previous run,
+     * settings included, its files can be kept as they are and the list does not need to be processed again.
+     *
+     * @return true if processing can be skipped
+     */
+    protected boolean reuseUnchangedOutput() {
+        return catalogUnchanged && streamIndex.isSettingsUnchanged() && fileManager.retain(getOutputDir());
+    }
 
-        resetCounters(totalStreamsCount);
+    protected void handleStream(CatalogEntry stream) {
+        streamsCount.incrementAndGet();
 
-        // Process streams one at a time, allowing GC to collect each stream after processing
-        Iterator<Map<String, Object>> streamsIterator = allStreams.iterator();
-        while (streamsIterator.hasNext()) {
-            Map<String, Object> stream = streamsIterator.next();
-            Object streamName = stream.get("name");
-            if (!canProcess(stream)) {
-                logDebug("Skipping stream: " + streamName);
-                streamsSkipped++;
-            } else {
-                try {
-                    processItem(stream);
-                } catch (Exception ex) {
-                    logError("Failed to process " + getMediaType() + " stream, ID: " + streamName + ", Error: " + ex.getMessage(), ex);
-                }
-                updateCounters();
-            }
-            streamsIterator.remove();
+        if (!canProcess(stream)) {
+            logDebug("Skipping stream: " + stream.getName());
+            streamsSkipped.incrementAndGet();
+            return;
         }
 
-        // Clear the entire list to release all references
-        allStreams.clear();
+        // Streams identical to the previous run only need their files to be kept
+        String fingerprint = getFingerprint(stream);
+        if (keepUnchangedItem(stream, fingerprint)) {
+            updateCounters();
+            return;
+        }
+
+        runItem(stream, fingerprint);
+    }
+
+    /**
+     * Process a new or changed stream and update the counters, subclasses may override it to run items asynchronously.
+     * The files it writes are recorded in the stream index once they are all written, unless processing fails,
+     * a file cannot be written, or the item is marked incomplete.
+     */
+    protected void runItem(CatalogEntry stream, String fingerprint) {
+        ItemOutput output = new ItemOutput(getStreamId(stream), fingerprint);
+        currentItem.set(output);
+        boolean processed = false;
+        try {
+            processItem(stream);
+            processed = true;
+        } catch (Exception ex) {
+            logError("Failed to process " + getMediaType() + " stream, ID: " + stream.getName() + ", Error: " + ex.getMessage(), ex);
+        } finally {
+            currentItem.remove();
+            output.taskDone(processed);
+        }
+        updateCounters();
+    }
+
+    private boolean keepUnchangedItem(CatalogEntry stream, String fingerprint) {
+        String streamId = getStreamId(stream);
+        StreamIndex.Entry entry = streamIndex.getUnchanged(streamId, fingerprint);
+
+        boolean unchanged = entry != null && entry.getFiles() != null && fileManager.retain(entry.getFiles());
+        countDelta(streamId, unchanged);
+        return unchanged;
+    }
+
+    /**
+     * Update the new/changed/unchanged counters, an unchanged stream keeps its stream index entry.
+     */
+    protected void countDelta(String streamId, boolean unchanged) {
+        if (unchanged) {
+            streamIndex.carryOver(streamId);
+            unchangedCount.incrementAndGet();
+        } else if (streamIndex.contains(streamId)) {
+            changedCount.incrementAndGet();
+        } else {
+            newCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Prevent the stream being processed from being recorded in the stream index, so it is processed again next time.
+     */
+    protected void markItemIncomplete() {
+        ItemOutput output = currentItem.get();
+        if (output != null) {
+            output.complete = false;
+        }
+    }
+
+    protected String getStreamId(CatalogEntry stream) {
+        return stream.get("stream_id");
+    }
+
+    /**
+     * Fingerprint of the list data a stream is processed from, its output is reused while the fingerprint is unchanged.
+     *
+     * @return null if the stream must always be processed
+     */
+    protected String getFingerprint(CatalogEntry stream) {
+        // The entry fingerprint covers its raw fields, the category name is resolved separately
+        long hash = HashUtils.update(stream.getFingerprint(), categories.get(String.valueOf(stream.getCategoryId())));
+        return HashUtils.toHex(hash);
     }
 
-    protected boolean canProcess(Map<String, Object> streamInfo) {
-        String streamName = (String) streamInfo.get("name");
-        String categoryId = String.valueOf(streamInfo.get("category_id"));
+    /**
+     * Fingerprint of the settings that shape the output, the stream index is only valid for the same settings.
+     */
+    private String getOutputSettings() {
+        String settings = String.join("|", mediaDir, String.valueOf(categoryFolder),
+                String.valueOf(writeMetadataJson), String.valueOf(writeMetadataNfo),
+                String.valueOf(nameCleanupPatterns), String.valueOf(categoryNameCleanupPatterns),
+                providerUrl, username, password);
+        // Only added when customized, to keep the stream indexes written before they were part of the settings
+        if (!Constants.DEFAULT_NAME_TEMPLATE.equals(nameTemplate)) {
+            settings += "|" + nameTemplate;
+        }
+        if (!includeCategoryIds.isEmpty() || !excludeCategoryIds.isEmpty()) {
+            settings += "|" + includeCategoryIds + "|" + excludeCategoryIds;
+        }
+        return HashUtils.toHex(HashUtils.hash64(settings));
+    }
+
+    protected boolean canProcess(CatalogEntry streamInfo) {
+        String streamName = streamInfo.getName();
+        String categoryId = String.valueOf(streamInfo.getCategoryId());
 
         if (streamName == null) {
             return false;
@@ -284,7 +464,7 @@ public abstract class BaseStreamsHandler {
         try {
             logDebug("Load endpoint data, Endpoint: " + endpoint);
 
-            Object dataResult = getData(endpoint, action, null);
+            Object dataResult = getData(endpoint, action, null, true);
 
             if (dataResult != null) {
                 if (endpoint == XtreamEndpoint.PLAYER) {
@@ -342,16 +522,16 @@ public abstract class BaseStreamsHandler {
     }
 
     protected String cleanNameRegex(String text) {
-        if (text != null) {
-            for (Map.Entry<String, String> entry : nameCleanupPatterns.entrySet()) {
-                String regexFind = entry.getKey();
-                String regexReplace = entry.getValue();
+        return text != null ? nameCleanup.apply(text).trim() : null;
+    }
 
-                text = RegexUtils.replaceAll(text, regexFind, regexReplace);
-            }
-            text = text.trim();
+    private void reportUnfilteredPatterns(String setting, PatternRewriter patterns) {
+        // These are run on every name, the others are skipped for names without the literal text they need
+        List<String> unfiltered = patterns.getUnfilteredPatterns();
+        if (!unfiltered.isEmpty()) {
+            logInfo(String.format("%d %s have no required literal text and are run on every name: %s",
+                    unfiltered.size(), setting, unfiltered));
         }
-        return text;
     }
 
     protected String buildUrl(XtreamEndpoint endpoint, XtreamAction action, String contextId) {
@@ -376,7 +556,15 @@ public abstract class BaseStreamsHandler {
     }
 
     public Object getData(XtreamEndpoint endpoint, XtreamAction action, String contextId) {
+        return getData(endpoint, action, contextId, false);
+    }
+
+    /**
+     * @param conditional send a conditional request and serve the previous body on 304 Not Modified
+     */
+    protected Object getData(XtreamEndpoint endpoint, XtreamAction action, String contextId, boolean conditional) {
         Object result = null;
+        boolean notModified = false;
         String path = getCachePath(endpoint, action, contextId);
 
         if (useCache) {
@@ -388,25 +576,32 @@ public abstract class BaseStreamsHandler {
 
             log.debug("Fetching data from URL: {}", url);
 
-            for (int attempt = 0; attempt < 3; attempt++) {
+            for (int attempt = 0; attempt < Constants.REQUEST_ATTEMPTS; attempt++) {
                 try {
-                    HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                            .uri(URI.create(url))
-                            .timeout(Duration.ofSeconds(30))
-                            .GET();
-
-                    for (Map.Entry<String, String> header : Constants.HEADERS.entrySet()) {
-                        requestBuilder.header(header.getKey(), header.getValue());
+                    awaitRetry(attempt);
+                    HttpRequest.Builder requestBuilder = transport.newRequest(url);
+                    if (conditional) {
+                        conditionalCache.addConditionalHeaders(requestBuilder, path);
                     }
 
-                    HttpResponse<String> response = httpClient.send(
-                            requestBuilder.build(),
-                            HttpResponse.BodyHandlers.ofString()
-                    );
-
-                    if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                        String responseBody = response.body();
+                    HttpResponse<InputStream> response = transport.sendForStream(requestBuilder.build());
+
+                    String responseBody = null;
+                    if (conditional && response.statusCode() == 304) {
+                        response.body().close();
+                        logDebug("Not modified, using previous body: " + path);
+                        responseBody = conditionalCache.readBody(path);
+                        notModified = true;
+                    } else if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                        responseBody = transport.readBody(response, getEndpointName(endpoint, action));
+                        if (conditional) {
+                            conditionalCache.storeBody(path, responseBody, response.headers());
+                        }
+                    } else {
+                        response.body().close();
+                    }
 
+                    if (responseBody != null) {
                         if (endpoint.isJson()) {
                             result = objectMapper.readValue(responseBody, Object.class);
                         } else {
@@ -414,25 +609,20 @@ public abstract class BaseStreamsHandler {
                         }
                         break;
                     }
-
-                    Thread.sleep(1000);
-                } catch (IOException | InterruptedException e) {
-                    if (e instanceof InterruptedException) {
-                        Thread.currentThread().interrupt();
-                    }
-                    logError("Attempt " + (attempt + 1) + " failed: " + e.getMessage(), e);
-                }
-            }
-
-            if (result != null) {
-                try {
-                    Thread.sleep(100);
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
+                    logError("Attempt " + (attempt + 1) + " interrupted", e);
+                    break;
+                } catch (IOException e) {
+                    logError("Attempt " + (attempt + 1) + " failed: " + e.getMessage(), e);
                 }
             }
         }
 
+        if (conditional && !(notModified && result != null)) {
+            catalogUnchanged = false;
+        }
+
         if (useCache && result != null) {
             String date = Instant.now().toString();
             fileManager.save(path, result, date);
@@ -441,6 +631,221 @@ public abstract class BaseStreamsHandler {
         return result;
     }
 
+    /**
+     * Fetch a JSON list and hand each element to the consumer as soon as it is parsed,
+     * so peak memory is bounded by a single item rather than by the whole list.
+     * The request is conditional, an unchanged list is read back from the previous body.
+     *
+     * @return the number of items handed to the consumer, or {@link #LIST_NOT_MODIFIED} if the list
+     * was not modified and {@link #reuseUnchangedOutput()} allowed to skip it
+     * @throws IOException if the list could not be fetched or was truncated
+     */
+    public int streamData(XtreamEndpoint endpoint, XtreamAction action, String contextId,
+                          Consumer<CatalogEntry> itemConsumer) throws IOException {
+        if (useCache) {
+            Object result = getData(endpoint, action, contextId);
+            if (!(result instanceof List<?> items)) {
+                throw new IOException("No list data available for action: " + action);
+            }
+            CatalogReader reader = new CatalogReader(objectMapper);
+            for (Object item : items) {
+                itemConsumer.accept(reader.read(objectMapper.writeValueAsBytes(item)));
+            }
+            return items.size();
+        }
+
+        String url = buildUrl(endpoint, action, contextId);
+        String path = getCachePath(endpoint, action, contextId);
+
+        log.debug("Streaming data from URL: {}", url);
+
+        for (int attempt = 0; attempt < Constants.REQUEST_ATTEMPTS; attempt++) {
+            boolean reading = false;
+            try {
+                awaitRetry(attempt);
+                HttpRequest.Builder requestBuilder = transport.newRequest(url);
+                conditionalCache.addConditionalHeaders(requestBuilder, path);
+
+                HttpResponse<InputStream> response = transport.sendForStream(requestBuilder.build());
+
+                if (response.statusCode() == 304) {
+                    response.body().close();
+
+                    if (reuseUnchangedOutput()) {
+                        return LIST_NOT_MODIFIED;
+                    }
+
+                    logDebug("Not modified, using previous body: " + path);
+                    reading = true;
+                    try (InputStream body = conditionalCache.openBody(path)) {
+                        return readItems(body, itemConsumer);
+                    }
+                }
+
+                if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                    // Items may already have been consumed, a failure past this point is not retried
+                    reading = true;
+                    catalogUnchanged = false;
+                    return readItems(response, getEndpointName(endpoint, action), path, itemConsumer);
+                }
+
+                response.body().close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while streaming data", e);
+            } catch (IOException e) {
+                if (reading) {
+                    throw e;
+                }
+                logError("Attempt " + (attempt + 1) + " failed: " + e.getMessage(), e);
+            }
+        }
+
+        throw new IOException("Failed to fetch list, Action: " + action);
+    }
+
+    /**
+     * Wait before a retry, twice as long after each failed attempt. Failures other than throttling do not slow down
+     * the rate limiter, without a delay every attempt would hit the provider back to back.
+     */
+    private void awaitRetry(int attempt) throws InterruptedException {
+        if (attempt > 0) {
+            long delay = Constants.RETRY_BASE_DELAY_MS << (attempt - 1);
+            logDebug("Retrying in " + delay + " ms, Attempt: " + (attempt + 1));
+            Thread.sleep(delay);
+        }
+    }
+
+    /**
+     * Download a provider document straight into a media file, so it is never held in memory.
+     * An unchanged document keeps the existing file.
+     *
+     * @param conditional send a conditional request, only valid if the file is written the same way as before
+     * @return false if the document could not be downloaded, the existing file is then kept
+     */
+    protected boolean downloadFile(XtreamEndpoint endpoint, XtreamAction action, String filePath, Instant date,
+                                   boolean conditional) {
+        String url = buildUrl(endpoint, action, null);
+
+        log.debug("Downloading data from URL: {}", url);
+
+        for (int attempt = 0; attempt < Constants.REQUEST_ATTEMPTS; attempt++) {
+            try {
+                awaitRetry(attempt);
+                HttpRequest.Builder requestBuilder = transport.newRequest(url);
+                if (conditional) {
+                    conditionalCache.addConditionalHeaders(requestBuilder, filePath);
+                }
+
+                HttpResponse<InputStream> response = transport.sendForStream(requestBuilder.build());
+
+                if (conditional && response.statusCode() == 304) {
+                    response.body().close();
+                    logDebug("Not modified, keeping existing file: " + filePath);
+                    fileManager.retain(filePath);
+                    return true;
+                }
+
+                if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                    fileManager.saveStream(filePath, out -> {
+                        try (InputStream body = transport.openBody(response, getEndpointName(endpoint, action))) {
+                            writeDownload(endpoint, body, out);
+                        }
+                    }, date.toString());
+                    conditionalCache.storeValidators(filePath, response.headers());
+                    return true;
+                }
+
+                response.body().close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logError("Attempt " + (attempt + 1) + " interrupted", e);
+                break;
+            } catch (IOException e) {
+                logError("Attempt " + (attempt + 1) + " failed: " + e.getMessage(), e);
+            }
+        }
+
+        fileManager.retain(filePath);
+        return false;
+    }
+
+    /**
+     * Write a document downloaded by {@link #downloadFile}, to be overridden by subclasses that transform it.
+     */
+    protected void writeDownload(XtreamEndpoint endpoint, InputStream body, OutputStream out) throws IOException {
+        body.transferTo(out);
+    }
+
+    private int readItems(HttpResponse<InputStream> response, String endpointName, String path,
+                          Consumer<CatalogEntry> itemConsumer) throws IOException {
+        // The decoded body is copied aside while it is parsed so the next request can be conditional
+        Path tempBody = conditionalCache.createTempBody(path);
+        try (InputStream body = new TeeInputStream(transport.openBody(response, endpointName),
+                new BufferedOutputStream(Files.newOutputStream(tempBody)))) {
+            int itemsCount = readItems(body, itemConsumer);
+            body.transferTo(OutputStream.nullOutputStream());
+            body.close();
+
+            conditionalCache.storeBody(path, tempBody, response.headers());
+            return itemsCount;
+        } finally {
+            conditionalCache.discard(tempBody);
+        }
+    }
+
+    private int readItems(InputStream body, Consumer<CatalogEntry> itemConsumer) throws IOException {
+        int itemsCount = 0;
+        int itemsSkipped = 0;
+        CatalogReader reader = new CatalogReader(objectMapper);
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            // The caller owns the body and may keep reading it after the list
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array but got: " + parser.currentToken());
+            }
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new IOException("Unexpected end of list after " + itemsCount + " items");
+                }
+
+                CatalogEntry item = readItem(parser, reader, token);
+                if (item == null) {
+                    itemsSkipped++;
+                    continue;
+                }
+
+                itemsCount++;
+                itemConsumer.accept(item);
+            }
+        }
+
+        if (itemsSkipped > 0) {
+            logWarning("Skipped " + itemsSkipped + " malformed list items");
+        }
+
+        return itemsCount;
+    }
+
+    private CatalogEntry readItem(JsonParser parser, CatalogReader reader, JsonToken token) throws IOException {
+        if (token != JsonToken.START_OBJECT) {
+            logWarning("Skipping list item, expected an object but got: " + token);
+            parser.skipChildren();
+            return null;
+        }
+
+        // A broken document fails here, there is no reliable way to resume
+        return reader.read(parser);
+    }
+
+    private String getEndpointName(XtreamEndpoint endpoint, XtreamAction action) {
+        return action != null ? action.toString() : endpoint.toString();
+    }
+
     protected String getCachePath(XtreamEndpoint endpoint, XtreamAction action, String contextId) {
         List<String> parts = new ArrayList<>();
         parts.add(endpoint.toString());
@@ -456,29 +861,107 @@ public abstract class BaseStreamsHandler {
         return providerUrl + "/" + getMediaType() + "/" + username + "/" + password + "/" + streamId + "." + ext;
     }
 
+    /**
+     * Queue a file for the write stage, or write it right away outside of a run.
+     */
     protected void addFile(String filePath, Object content, Instant date) {
-        fileManager.save(filePath, content, date.toString());
+        // The item is only recorded in the stream index once the file is written
+        ItemOutput output = currentItem.get();
+        FileManager.SaveListener listener = null;
+        if (output != null) {
+            output.files.add(filePath);
+            output.pendingTasks.incrementAndGet();
+            listener = (path, saved) -> output.taskDone(saved);
+        }
+
+        PipelineStage stage = writeStage;
+        if (stage != null) {
+            FileManager.SaveListener saveListener = listener;
+            stage.submit(() -> save(filePath, content, date, saveListener));
+        } else {
+            save(filePath, content, date, listener);
+        }
+    }
+
+    private void save(String filePath, Object content, Instant date, FileManager.SaveListener listener) {
+        try {
+            fileManager.save(filePath, content, date.toString(), listener);
+        } catch (RuntimeException e) {
+            if (listener != null) {
+                listener.onSaveDone(filePath, false);
+            }
+            throw e;
+        }
+    }
+
+    private void startPipeline() {
+        String stagePrefix = providerName + "-" + getMediaType();
+        int processors = Runtime.getRuntime().availableProcessors();
+
+        fetchNanos = 0;
+        transformStage = new PipelineStage(stagePrefix + "-transform", processors, Constants.PIPELINE_QUEUE_SIZE);
+        writeStage = new PipelineStage(stagePrefix + "-write", Constants.PIPELINE_WRITE_THREADS,
+                Constants.PIPELINE_QUEUE_SIZE);
+    }
+
+    private void stopPipeline() {
+        // Transform tasks hand their files to the write stage, so it is drained last
+        if (transformStage != null) {
+            transformStage.close();
+        }
+        if (writeStage != null) {
+            writeStage.close();
+        }
+        fileManager.flush();
+
+        if (transformStage != null && writeStage != null) {
+            logPipelineMetrics();
+        }
+        transformStage = null;
+        writeStage = null;
+    }
+
+    private void logPipelineMetrics() {
+        if (fetchNanos > 0) {
+            logInfo(String.format("Pipeline fetch: Streams: %d, Duration: %.3f s", streamsCount.get(), fetchNanos / 1e9));
+        }
+        if (transformStage.getTasks() > 0) {
+            logInfo("Pipeline " + transformStage);
+        }
+        if (writeStage.getTasks() > 0) {
+            logInfo("Pipeline " + writeStage);
+        }
     }
 
     protected void resetCounters(int streams) {
-        this.streamsCount = streams;
-        this.processedCount = 0;
-        this.streamsSkipped = 0;
+        this.streamsCount.set(streams);
+        this.processedCount.set(0);
+        this.streamsSkipped.set(0);
     }
 
     protected void updateCounters() {
         long executionTime = System.currentTimeMillis() - processingStartTime;
 
-        processedCount++;
+        int processed = processedCount.incrementAndGet();
+        int skipped = streamsSkipped.get();
+
+        int totalHandled = processed + skipped;
+
+        // While streaming the list size is unknown, the previous run gives a usable estimate
+        int expectedCount = Math.max(previousStreamsCount, streamsCount.get());
+        if (expectedCount <= 0 || totalHandled > expectedCount) {
+            logInfo(String.format("Progress: %d, Processed: %d, Skipped: %d, Elapsed: %.2f seconds",
+                    totalHandled, processed, skipped, executionTime / 1000.0));
+            return;
+        }
 
-        int totalHandled = processedCount + streamsSkipped;
-        double progress = (double) totalHandled / streamsCount;
+        double progress = (double) totalHandled / expectedCount;
         double progressLeftRatio = 1.0 / progress;
         double expectedDuration = progressLeftRatio * executionTime;
         double timeLeft = expectedDuration - executionTime;
 
         logInfo(String.format("Progress: %d / %d (%.1f%%), Processed: %d, Skipped: %d, Estimated time left: %.2f seconds",
-                totalHandled, streamsCount, progress * 100, processedCount, streamsSkipped, timeLeft / 1000.0));
+                totalHandled, expectedCount, progress * 100, processed, skipped, timeLeft / 1000.0));
     }
 
     protected void logError(String message, Exception ex) {
@@ -507,15 +990,43 @@ public abstract class BaseStreamsHandler {
     }
 
     protected String extractYear(Map<String, Object> streamData) {
-        if (streamData == null) {
-            return null;
-        }
+        return streamData != null ? extractYear(streamData::get) : null;
+    }
+
+    protected String extractYear(CatalogEntry streamData) {
+        return streamData != null ? extractYear(streamData::getValue) : null;
+    }
+
+    protected String extractTmdbId(Map<String, Object> streamData) {
+        return streamData != null ? extractTmdbId(key -> getNestedValue(streamData, key)) : null;
+    }
+
+    protected String extractTmdbId(CatalogEntry streamData) {
+        return streamData != null ? extractTmdbId(streamData::getValue) : null;
+    }
+
+    protected String extractImdbId(Map<String, Object> streamData) {
+        return streamData != null ? extractImdbId(key -> getNestedValue(streamData, key)) : null;
+    }
+
+    protected String extractImdbId(CatalogEntry streamData) {
+        return streamData != null ? extractImdbId(streamData::getValue) : null;
+    }
+
+    protected String extractTvdbId(Map<String, Object> streamData) {
+        return streamData != null ? extractTvdbId(key -> getNestedValue(streamData, key)) : null;
+    }
+
+    protected String extractTvdbId(CatalogEntry streamData) {
+        return streamData != null ? extractTvdbId(streamData::getValue) : null;
+    }
 
+    private String extractYear(Function<String, Object> fieldResolver) {
         // Try multiple field names
         String[] yearFields = {"year", "releaseDate", "release_year", "release_date"};
 
         for (String field : yearFields) {
-            Object value = streamData.get(field);
+            Object value = fieldResolver.apply(field);
             if (value != null) {
                 String yearStr = value.toString();
                 // Extract year from date strings like "2024-12-18" or just "2024"
@@ -528,16 +1039,12 @@ public abstract class BaseStreamsHandler {
         return null;
     }
 
-    protected String extractTmdbId(Map<String, Object> streamData) {
-        if (streamData == null) {
-            return null;
-        }
-
+    private String extractTmdbId(Function<String, Object> fieldResolver) {
         // Try multiple field names
         String[] tmdbFields = {"tmdb_id", "tmdb", "tmdbId", "movie_data.tmdb_id", "info.tmdb_id"};
 
         for (String field : tmdbFields) {
-            Object value = getNestedValue(streamData, field);
+            Object value = fieldResolver.apply(field);
             if (value != null) {
                 return value.toString();
             }
@@ -546,16 +1053,12 @@ public abstract class BaseStreamsHandler {
         return null;
     }
 
-    protected String extractImdbId(Map<String, Object> streamData) {
-        if (streamData == null) {
-            return null;
-        }
-
+    private String extractImdbId(Function<String, Object> fieldResolver) {
         // Try multiple field names
         String[] imdbFields = {"imdb_id", "imdb", "imdbId", "movie_data.imdb_id", "info.imdb_id"};
 
         for (String field : imdbFields) {
-            Object value = getNestedValue(streamData, field);
+            Object value = fieldResolver.apply(field);
             if (value != null) {
                 String imdbStr = value.toString();
                 // Ensure IMDB ID format (tt followed by numbers)
@@ -573,16 +1076,12 @@ public abstract class BaseStreamsHandler {
         return null;
     }
 
-    protected String extractTvdbId(Map<String, Object> streamData) {
-        if (streamData == null) {
-            return null;
-        }
-
+    private String extractTvdbId(Function<String, Object> fieldResolver) {
         // Try multiple field names
         String[] tvdbFields = {"tvdb_id", "tvdb", "tvdbId", "series_data.tvdb_id", "info.tvdb_id"};
 
         for (String field : tvdbFields) {
-            Object value = getNestedValue(streamData, field);
+            Object value = fieldResolver.apply(field);
             if (value != null) {
                 return value.toString();
             }
@@ -614,4 +1113,36 @@ public abstract class BaseStreamsHandler {
         }
     }
 
+    /**
+     * Output of the item being processed, recorded in the stream index once its processing and all its writes are done.
+     */
+    private class ItemOutput {
+
+        private final String streamId;
+
+        private final String fingerprint;
+
+        private final List<String> files = new ArrayList<>();
+
+        // Processing of the item itself, plus one per file being saved
+        private final AtomicInteger pendingTasks = new AtomicInteger(1);
+
+        private volatile boolean complete = true;
+
+        private ItemOutput(String streamId, String fingerprint) {
+            this.streamId = streamId;
+            this.fingerprint = fingerprint;
+        }
+
+        private void taskDone(boolean succeeded) {
+            if (!succeeded) {
+                complete = false;
+            }
+            if (pendingTasks.decrementAndGet() == 0 && complete) {
+                streamIndex.record(streamId, fingerprint, files, null);
+            }
+        }
+
+    }
+
 }
@@ -1,20 +1,42 @@
 package uk.humbkr.xtream2jellyfin.streamhandler;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import uk.humbkr.xtream2jellyfin.catalog.CatalogEntry;
+import uk.humbkr.xtream2jellyfin.common.Constants;
+import uk.humbkr.xtream2jellyfin.config.EpgSettings;
 import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
 import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
+import uk.humbkr.xtream2jellyfin.epg.XmltvFilter;
 import uk.humbkr.xtream2jellyfin.filemanager.FileManager;
+import uk.humbkr.xtream2jellyfin.http.XtreamTransport;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 
 @Slf4j
 public class LiveStreamsHandler extends BaseStreamsHandler {
 
-    private String epgData;
+    private final EpgSettings epgSettings;
 
-    public LiveStreamsHandler(XtreamProviderConfig providerConfig, FileManager fileManager, GlobalSettings globalSettings) {
-        super(providerConfig, fileManager, globalSettings, log);
+    // EPG ids of the channels written to the playlist
+    private final Set<String> epgChannelIds = new HashSet<>();
+
+    // EPG ids the current guide file was filtered with
+    private Set<String> previousEpgChannelIds = Set.of();
+
+    private XmltvFilter epgFilter;
+
+    public LiveStreamsHandler(XtreamProviderConfig providerConfig,
+                              FileManager fileManager,
+                              XtreamTransport transport,
+                              GlobalSettings globalSettings) {
+        super(providerConfig, fileManager, transport, globalSettings, log);
+        this.epgSettings = providerConfig.getLive().getEpg();
     }
 
     @Override
@@ -30,50 +52,146 @@ public class LiveStreamsHandler extends BaseStreamsHandler {
 
             List<String> liveStreamsData = new ArrayList<>();
             liveStreamsData.add("#EXTM3U");
+            epgChannelIds.clear();
 
-            for (Map<String, Object> liveStream : getStreams()) {
+            XtreamAction streamsAction = resolvers.get(Constants.MEDIA_RESOLVER_STREAMS);
+            int liveStreamsCount = streamData(XtreamEndpoint.PLAYER, streamsAction, null, liveStream -> {
                 boolean canProcess = canProcess(liveStream);
 
                 if (canProcess) {
-                    List<String> lines = processLiveStream(liveStream);
+                    List<String> lines = renderLiveStream(liveStream);
 
                     if (lines != null) {
                         liveStreamsData.addAll(lines);
                     }
                 }
-            }
-
-            String m3uContent = String.join("\r\n", liveStreamsData);
+            });
 
             Instant date = Instant.now();
 
-            addFile(mediaDir + "/live.m3u", m3uContent, date);
-            addFile(mediaDir + "/epg.xml", epgData, date);
+            if (liveStreamsCount == LIST_NOT_MODIFIED) {
+                logInfo("Provider data not modified, existing playlist kept");
+            } else {
+                String m3uContent = String.join("\r\n", liveStreamsData);
+                addFile(mediaDir + "/live.m3u", m3uContent, date);
+            }
+
+            downloadEpg(date);
 
             long executionTime = System.currentTimeMillis() - startTime;
 
-            logInfo(String.format("Processed live streams [%d], Duration: %.3f seconds",
-                    getStreams().size(), executionTime / 1000.0));
+            if (liveStreamsCount != LIST_NOT_MODIFIED) {
+                logInfo(String.format("Processed live streams [%d], Duration: %.3f seconds",
+                        liveStreamsCount, executionTime / 1000.0));
+            }
 
         } catch (Exception ex) {
             logError("Failed to load live streams: " + ex.getMessage(), ex);
         }
     }
 
-    private List<String> processLiveStream(Map<String, Object> liveStream) {
+    @Override
+    protected boolean reuseUnchangedOutput() {
+        // The playlist must be read again to know which channels to keep in the guide
+        return !epgSettings.isFilterChannels() && super.reuseUnchangedOutput();
+    }
+
+    private void downloadEpg(Instant date) {
+        // The guide changes independently of the channel list and is always checked,
+        // a guide filtered for other channels cannot be kept on a 304
+        boolean sameChannels = !epgSettings.isFilterChannels() || epgChannelIds.equals(previousEpgChannelIds);
+
+        // A guide cut to a time window around the previous run cannot be kept on a 304 either,
+        // the window moves with every run while the provider guide may not change
+        boolean conditional = sameChannels && !hasTimeWindow();
+
+        if (!downloadFile(XtreamEndpoint.EPG, null, mediaDir + "/epg.xml", date, conditional)) {
+            logWarning("Failed to download EPG, existing guide kept");
+            return;
+        }
+
+        previousEpgChannelIds = Set.copyOf(epgChannelIds);
+
+        if (epgFilter != null && !epgFilter.isPassThrough()) {
+            logInfo(String.format("EPG filtered, Channels: %d kept, %d dropped, Programmes: %d kept, %d dropped",
+                    epgFilter.getChannelsKept(), epgFilter.getChannelsDropped(),
+                    epgFilter.getProgrammesKept(), epgFilter.getProgrammesDropped()));
+        }
+        epgFilter = null;
+    }
+
+    @Override
+    protected void writeDownload(XtreamEndpoint endpoint, InputStream body, OutputStream out) throws IOException {
+        if (endpoint != XtreamEndpoint.EPG) {
+            super.writeDownload(endpoint, body, out);
+            return;
+        }
+
+        epgFilter = createEpgFilter();
+        epgFilter.filter(body, out);
+    }
+
+    private boolean hasTimeWindow() {
+        return epgSettings.getPastHours() > 0 || epgSettings.getFutureHours() > 0;
+    }
+
+    private XmltvFilter createEpgFilter() {
+        Set<String> channelIds = null;
+        if (epgSettings.isFilterChannels()) {
+            if (epgChannelIds.isEmpty()) {
+                // Without any EPG id in the playlist, there is nothing to match the guide against
+                logDebug("No EPG channel id in playlist, guide channels not filtered");
+            } else {
+                channelIds = epgChannelIds;
+            }
+        }
+
+        Instant now = Instant.now();
+        Instant windowStart = epgSettings.getPastHours() > 0 ? now.minus(Duration.ofHours(epgSettings.getPastHours())) : null;
+        Instant windowEnd = epgSettings.getFutureHours() > 0 ? now.plus(Duration.ofHours(epgSettings.getFutureHours())) : null;
+
+        return new XmltvFilter(channelIds, windowStart, windowEnd);
+    }
+
+    /**
+     * Playlist lines of a channel, reused from the previous run when the channel did not change.
+     */
+    private List<String> renderLiveStream(CatalogEntry liveStream) {
+        String channelUniqueId = liveStream.get("epg_channel_id");
+        if (StringUtils.isNotBlank(channelUniqueId)) {
+            epgChannelIds.add(channelUniqueId);
+        }
+
+        String streamId = getStreamId(liveStream);
+        String fingerprint = getFingerprint(liveStream);
+
+        StreamIndex.Entry entry = streamIndex.getUnchanged(streamId, fingerprint);
+        boolean unchanged = entry != null && entry.getLines() != null;
+        countDelta(streamId, unchanged);
+        if (unchanged) {
+            return entry.getLines();
+        }
+
+        List<String> lines = processLiveStream(liveStream);
+        if (lines != null) {
+            streamIndex.record(streamId, fingerprint, null, lines);
+        }
+        return lines;
+    }
+
+    private List<String> processLiveStream(CatalogEntry liveStream) {
         try {
-            String channelName = (String) liveStream.get("name");
-            String channelCategoryId = String.valueOf(liveStream.get("category_id"));
+            String channelName = liveStream.getName();
+            String channelCategoryId = String.valueOf(liveStream.getCategoryId());
             String channelGroup = categories.get(channelCategoryId);
 
             channelName = cleanNameRegex(channelName);
 
-            String channelUniqueId = (String) liveStream.get("epg_channel_id");
-            Object channelNumberObj = liveStream.get("stream_id");
-            String channelNumber = String.valueOf(channelNumberObj);
-            String channelLogo = (String) liveStream.get("stream_icon");
+            String channelUniqueId = liveStream.get("epg_channel_id");
+            String channelNumber = String.valueOf(liveStream.get("stream_id"));
+            String channelLogo = liveStream.get("stream_icon");
 
-            String streamType = (String) liveStream.getOrDefault("stream_type", MediaType.LIVE.toString());
+            String streamType = liveStream.getOrDefault("stream_type", MediaType.LIVE.toString());
 
             String streamUrl = buildStreamUrl(channelNumber, "m3u8");
 
@@ -105,18 +223,4 @@ public class LiveStreamsHandler extends BaseStreamsHandler {
         }
     }
 
-    @Override
-    protected List<Object[]> getDataPoints() {
-        List<Object[]> args = super.getDataPoints();
-        args.add(new Object[]{XtreamEndpoint.EPG, XtreamEndpoint.EPG.toString(), null});
-        return args;
-    }
-
-    @Override
-    protected void extraDataLoading(XtreamEndpoint endpoint, Object data) {
-        if (endpoint == XtreamEndpoint.EPG) {
-            this.epgData = (String) data;
-        }
-    }
-
 }
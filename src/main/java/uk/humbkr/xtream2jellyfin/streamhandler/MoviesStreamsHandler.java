@@ -1,9 +1,11 @@
 package uk.humbkr.xtream2jellyfin.streamhandler;
 
 import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.catalog.CatalogEntry;
 import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
 import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
 import uk.humbkr.xtream2jellyfin.filemanager.FileManager;
+import uk.humbkr.xtream2jellyfin.http.XtreamTransport;
 import uk.humbkr.xtream2jellyfin.metadata.NfoGenerator;
 import uk.humbkr.xtream2jellyfin.nameformat.StreamNameFormatContext;
 
@@ -17,8 +19,9 @@ public class MoviesStreamsHandler extends BaseStreamsHandler {
 
     public MoviesStreamsHandler(XtreamProviderConfig providerConfig,
                                 FileManager fileManager,
+                                XtreamTransport transport,
                                 GlobalSettings globalSettings) {
-        super(providerConfig, fileManager, globalSettings, log);
+        super(providerConfig, fileManager, transport, globalSettings, log);
     }
 
     @Override
@@ -27,18 +30,21 @@ public class MoviesStreamsHandler extends BaseStreamsHandler {
     }
 
     @Override
-    protected void processItem(Map<String, Object> stream) throws Exception {
+    protected String getOutputDir() {
+        return mediaDir + "s";
+    }
+
+    @Override
+    protected void processItem(CatalogEntry stream) throws Exception {
         processMovieStream(stream);
     }
 
-    private void processMovieStream(Map<String, Object> movieStream) {
-        String movieName = (String) movieStream.get("name");
-        Object addedObj = movieStream.get("added");
-        String categoryId = String.valueOf(movieStream.get("category_id"));
+    private void processMovieStream(CatalogEntry movieStream) {
+        String movieName = movieStream.getName();
+        String categoryId = String.valueOf(movieStream.getCategoryId());
 
-        Object movieIdObj = movieStream.get("stream_id");
-        String movieId = String.valueOf(movieIdObj);
-        String containerExtension = (String) movieStream.get("container_extension");
+        String movieId = String.valueOf(movieStream.get("stream_id"));
+        String containerExtension = movieStream.get("container_extension");
         String movieCategory = categories.get(categoryId);
 
         // Format movie name with Jellyfin-compatible naming
@@ -62,10 +68,10 @@ public class MoviesStreamsHandler extends BaseStreamsHandler {
                 .externalId(externalId)
                 .build();
 
-        String movieNameClean = movieNameFormat.format(movieName, context);
+        String movieNameClean = streamNameFormat.format(movieName, context);
 
         List<String> baseFilePathParts = new ArrayList<>();
-        baseFilePathParts.add(mediaDir + "s");
+        baseFilePathParts.add(getOutputDir());
 
         if (categoryFolder) {
             baseFilePathParts.add(movieCategory);
@@ -81,18 +87,23 @@ public class MoviesStreamsHandler extends BaseStreamsHandler {
 
         String streamDataFile = baseFilePath + ".json";
 
-        long addedTimestamp = Long.parseLong(String.valueOf(addedObj));
-        Instant date = Instant.ofEpochSecond(addedTimestamp);
+        if (movieStream.getAdded() == CatalogEntry.MISSING) {
+            throw new IllegalArgumentException("Invalid added timestamp: " + movieStream.get("added"));
+        }
+        Instant date = Instant.ofEpochSecond(movieStream.getAdded());
 
         addFile(streamFile, streamUrl, date);
+
+        // The metadata needs the entry with its nested fields and original types
+        Map<String, Object> movieData = writeMetadataJson || writeMetadataNfo ? movieStream.toMap() : null;
         if (writeMetadataJson) {
-            addFile(streamDataFile, movieStream, date);
+            addFile(streamDataFile, movieData, date);
         }
 
         // Generate and write movie NFO
         if (writeMetadataNfo) {
             String nfoFile = baseFilePath + ".nfo";
-            String nfoContent = NfoGenerator.generateMovieNfo(movieStream);
+            String nfoContent = NfoGenerator.generateMovieNfo(movieData);
             if (nfoContent != null) {
                 addFile(nfoFile, nfoContent, date);
             }
@@ -2,22 +2,37 @@ package uk.humbkr.xtream2jellyfin.streamhandler;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import uk.humbkr.xtream2jellyfin.catalog.CatalogEntry;
+import uk.humbkr.xtream2jellyfin.common.HashUtils;
 import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
 import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
 import uk.humbkr.xtream2jellyfin.filemanager.FileManager;
+import uk.humbkr.xtream2jellyfin.http.XtreamTransport;
 import uk.humbkr.xtream2jellyfin.metadata.NfoGenerator;
 import uk.humbkr.xtream2jellyfin.nameformat.StreamNameFormatContext;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 @Slf4j
 public class SeriesStreamsHandler extends BaseStreamsHandler {
 
-    public SeriesStreamsHandler(XtreamProviderConfig providerConfig, FileManager fileManager, GlobalSettings globalSettings) {
-        super(providerConfig, fileManager, globalSettings, log);
+    private ExecutorService enrichmentExecutor;
+
+    private Semaphore enrichmentPermits;
+
+    public SeriesStreamsHandler(XtreamProviderConfig providerConfig,
+                                FileManager fileManager,
+                                XtreamTransport transport,
+                                GlobalSettings globalSettings) {
+        super(providerConfig, fileManager, transport, globalSettings, log);
     }
 
     @Override
@@ -26,8 +41,73 @@ public class SeriesStreamsHandler extends BaseStreamsHandler {
     }
 
     @Override
-    protected void processItem(Map<String, Object> stream) throws Exception {
-        processSeriesStream(stream);
+    protected void processStreams() throws IOException {
+        // get_series_info calls are mostly network wait, they run on virtual threads up to the connection limit
+        logInfo("Enriching series with up to " + maxConnections + " concurrent requests");
+
+        enrichmentPermits = new Semaphore(maxConnections);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            enrichmentExecutor = executor;
+            super.processStreams();
+        } finally {
+            enrichmentExecutor = null;
+        }
+    }
+
+    @Override
+    protected void runItem(CatalogEntry stream, String fingerprint) {
+        try {
+            // Blocks the transform stage, and through it the list parser, while all permits are in use
+            enrichmentPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logWarning("Interrupted while waiting for a connection, Series: " + stream.getName());
+            return;
+        }
+
+        try {
+            enrichmentExecutor.submit(() -> {
+                try {
+                    super.runItem(stream, fingerprint);
+                } finally {
+                    enrichmentPermits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            enrichmentPermits.release();
+            logError("Failed to schedule series, Series: " + stream.getName(), e);
+        }
+    }
+
+    @Override
+    protected void processItem(CatalogEntry stream) throws Exception {
+        // The series details are merged into the entry, which needs a mutable map
+        processSeriesStream(stream.toMap());
+    }
+
+    @Override
+    protected String getStreamId(CatalogEntry stream) {
+        return stream.get("series_id");
+    }
+
+    /**
+     * The provider updates last_modified whenever the series details change, get_series_info is only needed then.
+     *
+     * @return null if the series has no last_modified value and must always be fetched
+     */
+    @Override
+    protected String getFingerprint(CatalogEntry stream) {
+        String lastModified = stream.get("last_modified");
+        if (StringUtils.isBlank(lastModified)) {
+            return null;
+        }
+
+        String categoryId = String.valueOf(stream.getCategoryId());
+        long hash = HashUtils.update(HashUtils.INITIAL_HASH, lastModified);
+        hash = HashUtils.update(hash, categoryId);
+        hash = HashUtils.update(hash, categories.get(categoryId));
+        hash = HashUtils.update(hash, String.valueOf(stream.getName()));
+        return HashUtils.toHex(hash);
     }
 
     private String getStreamInfoPath(Map<String, Object> stream) {
@@ -57,7 +137,7 @@ public class SeriesStreamsHandler extends BaseStreamsHandler {
                 .externalId(externalId)
                 .build();
 
-        String seriesNameClean = seriesNameFormat.format(seriesName, context);
+        String seriesNameClean = streamNameFormat.format(seriesName, context);
 
         if (!seriesName.equals(seriesNameClean)) {
             logDebug("Cleaned series name: '" + seriesName + "' to '" + seriesNameClean + "'");
@@ -127,9 +207,12 @@ public class SeriesStreamsHandler extends BaseStreamsHandler {
                         }
                     }
                 }
+            } else {
+                markItemIncomplete();
             }
 
         } catch (Exception ex) {
+            markItemIncomplete();
             logError("Failed to process stream, Stream: " + stream + ", Error: " + ex.getMessage(), ex);
         }
     }
@@ -177,6 +260,8 @@ public class SeriesStreamsHandler extends BaseStreamsHandler {
             }
 
         } catch (Exception ex) {
+            // A series with failed episodes is fetched again next time
+            markItemIncomplete();
             logError("Failed to process series, Series: " + seriesName +
                     ", Episode: " + episode + ", Error: " + ex.getMessage(), ex);
         }
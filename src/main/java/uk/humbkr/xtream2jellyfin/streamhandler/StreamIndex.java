@@ -0,0 +1,170 @@
+package uk.humbkr.xtream2jellyfin.streamhandler;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.common.JsonUtils;
+import uk.humbkr.xtream2jellyfin.filemanager.FileManagerUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers, for every stream of a handler, a fingerprint of the list data it was processed from
+ * and the output it produced, so an unchanged stream can keep its output without being processed again.
+ * <p>
+ * The index is persisted per provider and media type, and is discarded whenever the output settings change.
+ */
+@Slf4j
+public class StreamIndex {
+
+    private final ObjectMapper objectMapper = JsonUtils.initializeJsonMapper();
+
+    private final Path indexPath;
+
+    private String settings;
+
+    // Whether the previous entries were built with the settings of the current run
+    private boolean settingsUnchanged;
+
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private Map<String, Entry> nextEntries = new ConcurrentHashMap<>();
+
+    public StreamIndex(String cacheDir, MediaType mediaType) {
+        this.indexPath = Paths.get(cacheDir, mediaType + ".index.json");
+        load();
+    }
+
+    /**
+     * Start a new run, entries not recorded or carried over before {@link #commit()} are forgotten.
+     *
+     * @param settings fingerprint of the settings that shape the output, previous entries are only used if it matches
+     */
+    public void begin(String settings) {
+        settingsUnchanged = Objects.equals(this.settings, settings);
+        if (!settingsUnchanged) {
+            if (!entries.isEmpty()) {
+                log.info("Output settings changed, stream index discarded: {}", indexPath);
+            }
+            entries = new ConcurrentHashMap<>();
+            this.settings = settings;
+        }
+        nextEntries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return false if the output settings changed since the previous entries were built, or there are none,
+     * the previous output must then be written again
+     */
+    public boolean isSettingsUnchanged() {
+        return settingsUnchanged;
+    }
+
+    public boolean contains(String streamId) {
+        return streamId != null && entries.containsKey(streamId);
+    }
+
+    /**
+     * @return the entry of the previous run, or null if the stream was not seen or its fingerprint changed
+     */
+    public Entry getUnchanged(String streamId, String fingerprint) {
+        if (streamId == null || fingerprint == null) {
+            return null;
+        }
+        Entry entry = entries.get(streamId);
+        return entry != null && fingerprint.equals(entry.getFingerprint()) ? entry : null;
+    }
+
+    public void carryOver(String streamId) {
+        Entry entry = entries.get(streamId);
+        if (entry != null) {
+            nextEntries.put(streamId, entry);
+        }
+    }
+
+    public void record(String streamId, String fingerprint, List<String> files, List<String> lines) {
+        if (streamId != null && fingerprint != null) {
+            nextEntries.put(streamId, new Entry(fingerprint, files, lines));
+        }
+    }
+
+    /**
+     * Replace the previous entries with the ones of the current run and persist them.
+     * A run that recorded nothing, such as one skipped because the list was not modified, keeps the previous entries.
+     */
+    public void commit() {
+        if (nextEntries.isEmpty()) {
+            return;
+        }
+
+        entries = nextEntries;
+        nextEntries = new ConcurrentHashMap<>();
+
+        try {
+            FileManagerUtils.prepareDirectory(indexPath.getParent().toString());
+            Path tempPath = Files.createTempFile(indexPath.getParent(), indexPath.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(tempPath.toFile(), new IndexData(settings, entries));
+            Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.debug("Saved {} entries to stream index: {}", entries.size(), indexPath);
+        } catch (IOException e) {
+            log.error("Failed to save stream index: {}", indexPath, e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(indexPath)) {
+            return;
+        }
+
+        try {
+            IndexData data = objectMapper.readValue(indexPath.toFile(), IndexData.class);
+            settings = data.getSettings();
+            if (data.getEntries() != null) {
+                entries = new ConcurrentHashMap<>(data.getEntries());
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read stream index, all streams will be processed: {}", indexPath, e);
+        }
+    }
+
+    /**
+     * Output of a stream: the files it was written to, or the lines it rendered in a shared file.
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Entry {
+
+        private String fingerprint;
+
+        private List<String> files;
+
+        private List<String> lines;
+
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class IndexData {
+
+        private String settings;
+
+        private Map<String, Entry> entries;
+
+    }
+
+}
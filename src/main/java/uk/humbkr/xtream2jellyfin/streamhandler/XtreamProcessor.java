@@ -1,30 +1,34 @@
 package uk.humbkr.xtream2jellyfin.streamhandler;
 
 import lombok.extern.slf4j.Slf4j;
+import uk.humbkr.xtream2jellyfin.common.Constants;
 import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
 import uk.humbkr.xtream2jellyfin.config.JellyfinConfig;
+import uk.humbkr.xtream2jellyfin.config.WriteBehindConfig;
 import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
 import uk.humbkr.xtream2jellyfin.filemanager.CachedFileManager;
 import uk.humbkr.xtream2jellyfin.filemanager.FileManager;
 import uk.humbkr.xtream2jellyfin.filemanager.SimpleFileManager;
+import uk.humbkr.xtream2jellyfin.filemanager.WriteBehindWriter;
+import uk.humbkr.xtream2jellyfin.http.ConditionalCache;
+import uk.humbkr.xtream2jellyfin.http.RateLimiter;
+import uk.humbkr.xtream2jellyfin.http.XtreamTransport;
 
 import java.net.URI;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 @Slf4j
 public class XtreamProcessor {
 
-    private final HttpClient httpClient;
+    private final XtreamTransport transport;
 
     private final String providerName;
 
@@ -34,24 +38,24 @@ public class XtreamProcessor {
 
     private final String postProcessingUrl;
 
-    private final int scanInterval;
-
     private final boolean ready;
 
     private final FileManager fileManager;
 
     private final List<BaseStreamsHandler> streamHandlers;
 
-    private final boolean runOnce;
+    private final boolean concurrentHandlers;
 
     public XtreamProcessor(XtreamProviderConfig config, GlobalSettings globalSettings) {
 
         this.providerName = config.getName();
 
         log.info("[{}] Starting", providerName);
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(30))
-                .build();
+
+        // All handlers of a provider share one transport, so they reuse connections and one request rate
+        this.transport = new XtreamTransport(providerName,
+                RateLimiter.create(config.getRateLimit()),
+                new ConditionalCache(Constants.CACHE_DIR + "/" + providerName));
 
         JellyfinConfig jellyfinConfig = config.getLibraryRefresh();
 
@@ -69,8 +73,6 @@ public class XtreamProcessor {
         String username = config.getUsername();
         String password = config.getPassword();
 
-        this.scanInterval = config.getInterval();
-
         this.ready = username != null && password != null;
 
         String fileManagerType = globalSettings.getFileManagerType();
@@ -79,62 +81,98 @@ public class XtreamProcessor {
         log.info("Using file manager: {}", this.fileManager.getClass().getSimpleName());
 
         this.streamHandlers = new ArrayList<>();
-        streamHandlers.add(new LiveStreamsHandler(config, fileManager, globalSettings));
-        streamHandlers.add(new SeriesStreamsHandler(config, fileManager, globalSettings));
-        streamHandlers.add(new MoviesStreamsHandler(config, fileManager, globalSettings));
+        streamHandlers.add(new LiveStreamsHandler(config, fileManager, transport, globalSettings));
+        streamHandlers.add(new SeriesStreamsHandler(config, fileManager, transport, globalSettings));
+        streamHandlers.add(new MoviesStreamsHandler(config, fileManager, transport, globalSettings));
 
-        this.runOnce = globalSettings.isRunOnce();
+        this.concurrentHandlers = globalSettings.isConcurrentHandlers();
     }
 
     private FileManager createFileManager(GlobalSettings globalSettings) {
         String fileManagerType = globalSettings.getFileManagerType();
         String mediaDir = globalSettings.getMediaDir() + "/" + providerName;
 
+        WriteBehindConfig writeBehindConfig = globalSettings.getWriteBehind();
+        WriteBehindWriter writeBehind = null;
+        if (writeBehindConfig.isEnabled()) {
+            writeBehind = new WriteBehindWriter(writeBehindConfig.getThreads(), writeBehindConfig.getMaxPending(),
+                    writeBehindConfig.getFsyncBatchSize());
+        }
+
         if ("cached".equalsIgnoreCase(fileManagerType)) {
             String cacheDir = globalSettings.getCacheDir() + "/" + providerName;
-            return new CachedFileManager(mediaDir, cacheDir);
+            return new CachedFileManager(mediaDir, cacheDir, writeBehind);
         } else {
-            return new SimpleFileManager(mediaDir);
+            return new SimpleFileManager(mediaDir, writeBehind, globalSettings.isSimpleDiffSync());
         }
     }
 
-    public void processStreams() {
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Run one sync of all enabled handlers.
+     *
+     * @return false if the sync could not run
+     */
+    public boolean sync() {
         if (!ready) {
             log.error("[{}] Failed to run, please set credentials", providerName);
-            return;
+            return false;
         }
         log.info("[{}] Processing", providerName);
 
-        do {
-            try {
-                authenticate();
-                fileManager.initialize();
+        try {
+            authenticate();
+            fileManager.initialize();
 
-                List<BaseStreamsHandler> handlers = streamHandlers.stream()
-                        .filter(handler -> handler.enabled)
-                        .toList();
+            List<BaseStreamsHandler> handlers = streamHandlers.stream()
+                    .filter(handler -> handler.enabled)
+                    .toList();
 
+            long startTime = System.currentTimeMillis();
+
+            if (concurrentHandlers) {
+                processConcurrently(handlers);
+            } else {
                 for (BaseStreamsHandler streamHandler : handlers) {
                     streamHandler.process();
                 }
+            }
 
-                fileManager.complete();
-                postProcessing();
+            fileManager.complete();
+            transport.logMetrics();
+            postProcessing();
 
-                log.info("{} processing completed", providerName);
+            long executionTime = System.currentTimeMillis() - startTime;
+            log.info("{} processing completed, Duration: {} seconds",
+                    providerName, String.format("%.3f", executionTime / 1000.0));
+            return true;
 
-            } catch (Exception ex) {
-                if (ex.getMessage().contains("Authentication failed")) {
-                    log.error("Failed to start processing, Provider: {}, Error: Invalid Credentials", providerName);
-                } else {
-                    log.error("Failed to start processing, Provider: {}, Error: {}", providerName, ex.getMessage(), ex);
-                }
+        } catch (Exception ex) {
+            if (ex.getMessage() != null && ex.getMessage().contains("Authentication failed")) {
+                log.error("Failed to start processing, Provider: {}, Error: Invalid Credentials", providerName);
+            } else {
+                log.error("Failed to start processing, Provider: {}, Error: {}", providerName, ex.getMessage(), ex);
             }
+            return false;
+        }
+    }
 
-            if (!runOnce) {
-                waitForNextIteration();
+    /**
+     * Run the handlers side by side, live and series mostly wait on the provider while movies are bound by the disk.
+     * Returns once every handler is done, handlers report their own failures.
+     */
+    private void processConcurrently(List<BaseStreamsHandler> handlers) {
+        log.info("[{}] Running {} handlers concurrently", providerName, handlers.size());
+
+        ThreadFactory threadFactory = Thread.ofVirtual().name(providerName + "-handler-", 0).factory();
+        try (ExecutorService executor = Executors.newThreadPerTaskExecutor(threadFactory)) {
+            for (BaseStreamsHandler streamHandler : handlers) {
+                executor.submit(streamHandler::process);
             }
-        } while (!runOnce);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -155,8 +193,12 @@ public class XtreamProcessor {
             isAuth = authenticated == 1 && "Active".equals(status);
 
             if (isAuth) {
+                int maxConnections = parseMaxConnections(userInfo.get("max_connections"));
+                log.debug("[{}] Provider allows {} connections", providerName, maxConnections);
+
                 for (BaseStreamsHandler streamHandler : streamHandlers) {
                     streamHandler.setProviderUrl(serverInfo);
+                    streamHandler.setMaxConnections(maxConnections);
                 }
             }
         }
@@ -166,26 +208,16 @@ public class XtreamProcessor {
         }
     }
 
-    private void waitForNextIteration() {
-        long now = System.currentTimeMillis();
-        long nextInterval = 60L * scanInterval * 1000;
-        long nextIteration = now + nextInterval;
-
-        LocalDateTime nextIterationTime = LocalDateTime.ofInstant(
-                Instant.ofEpochMilli(nextIteration),
-                ZoneId.systemDefault()
-        );
-
-        String nextIterationIso = nextIterationTime.format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-
-        log.info("Next iteration for {} at {}", providerName, nextIterationIso);
-
-        try {
-            Thread.sleep(nextInterval);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            log.warn("Interrupted while waiting for next iteration", e);
+    private int parseMaxConnections(Object value) {
+        // Panels report max_connections either as a number or as a string
+        if (value != null) {
+            try {
+                return Integer.parseInt(String.valueOf(value).trim());
+            } catch (NumberFormatException e) {
+                log.debug("[{}] Invalid max_connections: {}", providerName, value);
+            }
         }
+        return 1;
     }
 
     private void postProcessing() {
@@ -201,7 +233,7 @@ public class XtreamProcessor {
                         .POST(HttpRequest.BodyPublishers.noBody())
                         .build();
 
-                HttpResponse<String> response = httpClient.send(
+                HttpResponse<String> response = transport.getHttpClient().send(
                         request,
                         HttpResponse.BodyHandlers.ofString()
                 );
@@ -0,0 +1,77 @@
+package uk.humbkr.xtream2jellyfin.catalog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CatalogReaderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testRead_typedFields() throws IOException {
+        // GIVEN
+        CatalogReader reader = new CatalogReader(objectMapper);
+
+        // WHEN
+        CatalogEntry entry = read(reader, """
+                {"num":1,"name":"Movie","stream_id":42,"added":"1700000000","category_id":"7",
+                 "container_extension":"mkv","movie_data":{"tmdb_id":909}}""");
+
+        // THEN
+        assertEquals("Movie", entry.getName());
+        assertEquals("7", entry.getCategoryId());
+        assertEquals(42, entry.getStreamId());
+        assertEquals(1700000000L, entry.getAdded());
+        assertEquals(CatalogEntry.MISSING, entry.getSeriesId());
+        assertEquals("mkv", entry.get("container_extension"));
+        assertNull(entry.get("movie_data"));
+        assertEquals(909, entry.getValue("movie_data.tmdb_id"));
+        assertEquals(Map.of("tmdb_id", 909), entry.toMap().get("movie_data"));
+    }
+
+    @Test
+    void testRead_dictionaryFieldsShared() throws IOException {
+        // GIVEN
+        CatalogReader reader = new CatalogReader(objectMapper);
+
+        // WHEN
+        CatalogEntry first = read(reader, "{\"category_id\":\"12\",\"name\":\"A\"}");
+        CatalogEntry second = read(reader, "{\"category_id\":\"12\",\"name\":\"B\"}");
+
+        // THEN
+        assertSame(first.getCategoryId(), second.getCategoryId());
+    }
+
+    @Test
+    void testRead_fingerprintIgnoresPosition() throws IOException {
+        // GIVEN
+        CatalogReader reader = new CatalogReader(objectMapper);
+
+        // WHEN
+        long first = read(reader, "{\"num\":1,\"name\":\"A\",\"rating\":\"5\"}").getFingerprint();
+        long moved = read(reader, "{\"num\":2,\"name\":\"A\",\"rating\":\"5\"}").getFingerprint();
+        long number = read(reader, "{\"num\":1,\"name\":\"A\",\"rating\":5}").getFingerprint();
+        long changed = read(reader, "{\"num\":1,\"name\":\"A\",\"rating\":\"6\"}").getFingerprint();
+
+        // THEN
+        assertEquals(first, moved);
+        assertNotEquals(first, number);
+        assertNotEquals(first, changed);
+    }
+
+    private CatalogEntry read(CatalogReader reader, String json) throws IOException {
+        return reader.read(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,121 @@
+package uk.humbkr.xtream2jellyfin.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PatternRewriterTest {
+
+    private static final String[][] PATTERNS = {
+            {"\\[HD\\]", ""},
+            {"\\(MULTI\\)", ""},
+            {"^\\|[A-Z]{2}\\|\\s*", ""},
+            {"\\s*-\\s+.*$", ""},
+            {"_", " "},
+            {"\\.", " "},
+            {"([a-z])([A-Z])", "$1 $2"},
+            {"(?i)\\s*(720p|1080p|4k|uhd)", ""},
+            {"\\[.*?\\]", ""},
+            {"FR:\\s*", "\\$"},
+            {"x26[45]", "codec"},
+            {"a+b", "ab"},
+            {"\\s+", " "},
+            {"ab", "[HD]"},
+    };
+
+    @Test
+    void testRequiredLiteral() {
+        assertEquals("[HD]", PatternRewriter.requiredLiteral("\\[HD\\]"));
+        assertEquals("(MULTI)", PatternRewriter.requiredLiteral("\\s*\\(MULTI\\)"));
+        assertEquals("ab", PatternRewriter.requiredLiteral("abc?d"));
+        assertEquals("[", PatternRewriter.requiredLiteral("\\[.*\\]$"));
+        assertEquals("x26", PatternRewriter.requiredLiteral("x26[45]"));
+        assertEquals("FR:", PatternRewriter.requiredLiteral("^FR:(\\s|-)+"));
+        assertEquals("b", PatternRewriter.requiredLiteral("a+b"));
+        assertEquals(" cu", PatternRewriter.requiredLiteral("(dir|extended) cut{1,2}?"));
+        assertNull(PatternRewriter.requiredLiteral("(?i)multi"));
+        assertNull(PatternRewriter.requiredLiteral("HD|4K"));
+        assertNull(PatternRewriter.requiredLiteral("\\s+"));
+        assertNull(PatternRewriter.requiredLiteral("\\QHD\\E"));
+        assertNull(PatternRewriter.requiredLiteral("\\x41BC"));
+        assertNull(PatternRewriter.requiredLiteral("([a-z])([A-Z])"));
+    }
+
+    @Test
+    void testApply_matchesSequentialReplaceAll() {
+        // GIVEN
+        Map<String, String> patterns = new LinkedHashMap<>();
+        for (String[] pattern : PATTERNS) {
+            patterns.put(pattern[0], pattern[1]);
+        }
+        PatternRewriter rewriter = PatternRewriter.compile(patterns);
+        Random random = new Random(42);
+        String alphabet = "abAB_. -|[]()FRHD:x2645MULTI1080p";
+
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; j++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String name = text.toString();
+            String expected = name;
+            for (Map.Entry<String, String> entry : patterns.entrySet()) {
+                expected = expected.replaceAll(entry.getKey(), entry.getValue());
+            }
+
+            // WHEN
+            String result = rewriter.apply(name);
+
+            // THEN
+            assertEquals(expected, result, "Name: " + name);
+        }
+    }
+
+    @Test
+    void testApply_noMatchReturnsSameText() {
+        // GIVEN
+        PatternRewriter rewriter = PatternRewriter.compile(Map.of("\\[HD\\]", ""));
+        String name = "The Matrix (1999)";
+
+        // WHEN / THEN
+        assertSame(name, rewriter.apply(name));
+        assertSame(name, PatternRewriter.compile(null).apply(name));
+    }
+
+    @Test
+    void testGetUnfilteredPatterns() {
+        // GIVEN
+        Map<String, String> patterns = new LinkedHashMap<>();
+        patterns.put("\\[HD\\]", "");
+        patterns.put("(?i)multi", "");
+        patterns.put("\\s+", " ");
+
+        // WHEN
+        PatternRewriter rewriter = PatternRewriter.compile(patterns);
+
+        // THEN
+        assertEquals(List.of("(?i)multi", "\\s+"), rewriter.getUnfilteredPatterns());
+    }
+
+    @Test
+    void testApply_invalidPattern() {
+        // GIVEN
+        PatternRewriter rewriter = PatternRewriter.compile(Map.of("[HD", ""));
+
+        // WHEN / THEN
+        assertThrows(PatternSyntaxException.class, () -> rewriter.apply("Movie [HD"));
+    }
+
+}
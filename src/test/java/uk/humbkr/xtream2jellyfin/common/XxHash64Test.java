@@ -0,0 +1,46 @@
+package uk.humbkr.xtream2jellyfin.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class XxHash64Test {
+
+    @Test
+    void testHash_referenceValues() {
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(bytes("")));
+        assertEquals(0xD24EC4F1A98C6E5BL, XxHash64.hash(bytes("a")));
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash(bytes("abc")));
+        assertEquals(0xFBCEA83C8A378BF1L, XxHash64.hash(bytes("Nobody inspects the spammish repetition")));
+    }
+
+    @Test
+    void testUpdate_incrementalMatchesOneShot() {
+        // GIVEN
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        long expected = XxHash64.hash(data);
+
+        for (int chunkSize : new int[]{1, 7, 31, 32, 33, 100}) {
+            // WHEN
+            XxHash64 hash = new XxHash64();
+            for (int offset = 0; offset < data.length; offset += chunkSize) {
+                hash.update(data, offset, Math.min(chunkSize, data.length - offset));
+            }
+
+            // THEN
+            assertEquals(expected, hash.getValue(), "Chunk size: " + chunkSize);
+        }
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
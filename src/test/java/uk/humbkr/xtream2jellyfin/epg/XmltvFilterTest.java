@@ -0,0 +1,115 @@
+package uk.humbkr.xtream2jellyfin.epg;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class XmltvFilterTest {
+
+    private static final String GUIDE = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <!DOCTYPE tv SYSTEM "xmltv.dtd">
+            <tv generator-info-name="test">
+              <channel id="bbc1.uk">
+                <display-name>BBC One</display-name>
+              </channel>
+              <channel id="cnn.us">
+                <display-name>CNN</display-name>
+              </channel>
+              <programme start="20240101100000 +0000" stop="20240101110000 +0000" channel="bbc1.uk">
+                <title lang="en">News &amp; Weather</title>
+              </programme>
+              <programme start="20240101100000 +0000" stop="20240101110000 +0000" channel="cnn.us">
+                <title>Headlines</title>
+              </programme>
+              <programme start="20240103100000 +0000" stop="20240103110000 +0000" channel="bbc1.uk">
+                <title>Film</title>
+              </programme>
+            </tv>
+            """;
+
+    @Test
+    void testFilter_keepsOnlyWantedChannels() throws IOException {
+        // GIVEN
+        XmltvFilter filter = new XmltvFilter(Set.of("bbc1.uk"), null, null);
+
+        // WHEN
+        String result = filter(filter, GUIDE);
+
+        // THEN
+        assertTrue(result.contains("<channel id=\"bbc1.uk\">"));
+        assertTrue(result.contains("News &amp; Weather"));
+        assertTrue(result.contains("Film"));
+        assertFalse(result.contains("cnn.us"));
+        assertFalse(result.contains("Headlines"));
+        assertEquals(1, filter.getChannelsKept());
+        assertEquals(1, filter.getChannelsDropped());
+        assertEquals(2, filter.getProgrammesKept());
+        assertEquals(1, filter.getProgrammesDropped());
+    }
+
+    @Test
+    void testFilter_dropsProgrammesOutsideWindow() throws IOException {
+        // GIVEN
+        XmltvFilter filter = new XmltvFilter(null,
+                Instant.parse("2024-01-01T10:30:00Z"), Instant.parse("2024-01-02T00:00:00Z"));
+
+        // WHEN
+        String result = filter(filter, GUIDE);
+
+        // THEN
+        assertTrue(result.contains("News &amp; Weather"));
+        assertTrue(result.contains("Headlines"));
+        assertFalse(result.contains("Film"));
+        assertEquals(2, filter.getChannelsKept());
+    }
+
+    @Test
+    void testFilter_passThroughKeepsBytes() throws IOException {
+        // GIVEN
+        XmltvFilter filter = new XmltvFilter(null, null, null);
+
+        // WHEN
+        String result = filter(filter, GUIDE);
+
+        // THEN
+        assertEquals(GUIDE, result);
+    }
+
+    @Test
+    void testFilter_truncatedGuideFails() {
+        // GIVEN
+        XmltvFilter filter = new XmltvFilter(Set.of("bbc1.uk"), null, null);
+        String truncated = GUIDE.substring(0, GUIDE.indexOf("<programme"));
+
+        // WHEN / THEN
+        assertThrows(IOException.class, () -> filter(filter, truncated));
+    }
+
+    @Test
+    void testParseDate_withAndWithoutOffset() {
+        // GIVEN / WHEN / THEN
+        assertEquals(Instant.parse("2024-01-01T09:00:00Z"), XmltvFilter.parseDate("20240101100000 +0100"));
+        assertEquals(Instant.parse("2024-01-01T10:00:00Z"), XmltvFilter.parseDate("20240101100000"));
+        assertEquals(null, XmltvFilter.parseDate("tomorrow"));
+    }
+
+    private String filter(XmltvFilter filter, String guide) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.filter(new ByteArrayInputStream(guide.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+}
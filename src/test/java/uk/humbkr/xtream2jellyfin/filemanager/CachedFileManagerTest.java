@@ -0,0 +1,69 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CachedFileManagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSave_listenerNotifiedOnceWritten() throws IOException {
+        // GIVEN
+        Path mediaDir = tempDir.resolve("save/media");
+        Files.createDirectories(mediaDir.resolve("blocked"));
+        String writtenPath = mediaDir.resolve("movie.strm").toString();
+        String blockedPath = mediaDir.resolve("blocked").toString();
+        CachedFileManager fileManager = new CachedFileManager(mediaDir.toString(), tempDir.resolve("save/cache").toString(),
+                new WriteBehindWriter(2, 4, 0));
+        Map<String, Boolean> results = new ConcurrentHashMap<>();
+
+        // WHEN
+        fileManager.initialize();
+        fileManager.save(writtenPath, "http://example.com/1.mkv", "2024-01-01", results::put);
+        fileManager.save(blockedPath, "http://example.com/2.mkv", "2024-01-01", results::put);
+        fileManager.flush();
+
+        // THEN
+        assertEquals(Map.of(writtenPath, true, blockedPath, false), results);
+        assertEquals("http://example.com/1.mkv", Files.readString(Path.of(writtenPath)));
+        fileManager.complete();
+    }
+
+    @Test
+    void testRetain_directoryWithoutTrackedFiles() {
+        // GIVEN
+        Path mediaDir = tempDir.resolve("retain/media");
+        String cacheDir = tempDir.resolve("retain/cache").toString();
+        String moviesDir = mediaDir.resolve("movies").toString();
+        CachedFileManager fileManager = new CachedFileManager(mediaDir.toString(), cacheDir);
+
+        // WHEN
+        fileManager.initialize();
+        boolean retainedFromEmptyDb = fileManager.retain(moviesDir);
+        fileManager.save(mediaDir.resolve("movies/movie.strm").toString(), "http://example.com/1.mkv", "2024-01-01");
+        fileManager.complete();
+
+        fileManager.initialize();
+        boolean retainedFromPreviousRun = fileManager.retain(moviesDir);
+        fileManager.complete();
+
+        // THEN
+        assertFalse(retainedFromEmptyDb);
+        assertTrue(retainedFromPreviousRun);
+    }
+
+}
@@ -0,0 +1,55 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class DirectoryCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testPrepare_checksKnownDirectoriesOnce() throws IOException {
+        // GIVEN
+        DirectoryCache cache = new DirectoryCache();
+        Path season = tempDir.resolve("known/Show/Season 01");
+        cache.prepare(season);
+
+        // WHEN
+        Files.delete(season);
+        cache.prepare(season);
+        cache.prepare(season.getParent());
+
+        // THEN
+        assertFalse(Files.exists(season));
+        assertTrue(Files.isDirectory(season.getParent()));
+    }
+
+    @Test
+    void testInvalidate_recreatesDeletedDirectory() throws IOException {
+        // GIVEN
+        DirectoryCache cache = new DirectoryCache();
+        Path season = tempDir.resolve("invalidated/Show/Season 01");
+        cache.prepare(season);
+
+        // WHEN
+        Files.delete(season);
+        Files.delete(season.getParent());
+        cache.invalidate(season);
+        cache.invalidate(season.getParent());
+        cache.prepare(season);
+
+        // THEN
+        assertTrue(Files.isDirectory(season));
+    }
+
+}
@@ -0,0 +1,153 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class FilesDbTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testLoad_replaysAppendedChanges() throws IOException {
+        // GIVEN
+        String cacheDir = tempDir.resolve("replay").toString();
+        FilesDb db = new FilesDb(cacheDir);
+        db.load();
+        db.put("/media/a.strm", new FilesDb.Entry("hash-a", "2024-01-01"));
+        db.put("/media/b.strm", new FilesDb.Entry("hash-b", "2024-01-01"));
+        db.commit();
+        long snapshotSize = Files.size(Path.of(cacheDir, "files.db"));
+
+        db.put("/media/a.strm", new FilesDb.Entry("hash-a2", "2024-01-02"));
+        db.remove("/media/b.strm");
+        db.commit();
+
+        // WHEN
+        FilesDb reloaded = new FilesDb(cacheDir);
+        reloaded.load();
+
+        // THEN
+        assertTrue(Files.size(Path.of(cacheDir, "files.db")) > snapshotSize);
+        assertEquals(new FilesDb.Entry("hash-a2", "2024-01-02"), reloaded.get("/media/a.strm"));
+        assertFalse(reloaded.contains("/media/b.strm"));
+        assertEquals(1, reloaded.size());
+    }
+
+    @Test
+    void testLoad_truncatesTornTail() throws IOException {
+        // GIVEN
+        String cacheDir = tempDir.resolve("tail").toString();
+        Path dbPath = Path.of(cacheDir, "files.db");
+        FilesDb db = new FilesDb(cacheDir);
+        db.load();
+        db.put("/media/a.strm", new FilesDb.Entry("hash-a", "2024-01-01"));
+        db.commit();
+        long validSize = Files.size(dbPath);
+
+        db.put("/media/b.strm", new FilesDb.Entry("hash-b", "2024-01-01"));
+        db.commit();
+        byte[] content = Files.readAllBytes(dbPath);
+        content[content.length - 1] ^= 1;
+        Files.write(dbPath, content);
+        Files.write(dbPath, new byte[]{1, 0, 0, 0, 42, '/'}, StandardOpenOption.APPEND);
+
+        // WHEN
+        FilesDb reloaded = new FilesDb(cacheDir);
+        reloaded.load();
+
+        // THEN
+        assertEquals(1, reloaded.size());
+        assertEquals("hash-a", reloaded.get("/media/a.strm").hash());
+        assertEquals(validSize, Files.size(dbPath));
+    }
+
+    @Test
+    void testCheckpoint_journalsOnlyWrittenEntries() throws IOException {
+        // GIVEN
+        String cacheDir = tempDir.resolve("checkpoint").toString();
+        FilesDb db = new FilesDb(cacheDir);
+        db.load();
+        FilesDb.Entry staged = new FilesDb.Entry("hash-a", "2024-01-01");
+        db.stage("/media/a.strm", staged);
+        db.put("/media/b.strm", new FilesDb.Entry("hash-b", "2024-01-01"));
+
+        // WHEN
+        db.checkpoint();
+        FilesDb interrupted = new FilesDb(cacheDir);
+        interrupted.load();
+
+        db.written("/media/a.strm", staged);
+        db.checkpoint();
+        FilesDb recovered = new FilesDb(cacheDir);
+        recovered.load();
+
+        // THEN
+        assertFalse(interrupted.contains("/media/a.strm"));
+        assertTrue(interrupted.contains("/media/b.strm"));
+        assertEquals(staged, recovered.get("/media/a.strm"));
+        assertEquals(2, recovered.size());
+    }
+
+    @Test
+    void testRemoveStale_removesEntriesNotKept() throws IOException {
+        // GIVEN
+        String cacheDir = tempDir.resolve("stale").toString();
+        FilesDb db = new FilesDb(cacheDir);
+        db.load();
+        db.put("media/series/Show/tvshow.nfo", new FilesDb.Entry("hash-show", "2024-01-01"));
+        db.put("media/series/Show/Season 01/S01E01.strm", new FilesDb.Entry("hash-episode", "2024-01-01"));
+        db.put("media/movies/Movie/Movie.strm", new FilesDb.Entry("hash-movie", "2024-01-01"));
+        db.put("media/movies/Old/Old.strm", new FilesDb.Entry("hash-old", "2024-01-01"));
+        db.commit();
+        db.load();
+        db.markAllStale();
+
+        // WHEN
+        int kept = db.keepUnder("media/series/Show");
+        boolean keptAll = db.keepAll(List.of("media/movies/Movie/Movie.strm", "media/movies/Missing.strm"));
+        db.keep("media/movies/Movie/Movie.strm");
+        List<String> removed = db.removeStale();
+        db.commit();
+        db.load();
+
+        // THEN
+        assertEquals(2, kept);
+        assertFalse(keptAll);
+        assertEquals(List.of("media/movies/Old/Old.strm"), removed);
+        assertEquals(3, db.size());
+        assertFalse(db.contains("media/movies/Old/Old.strm"));
+    }
+
+    @Test
+    void testLoad_migratesJsonDatabase() throws IOException {
+        // GIVEN
+        Path cacheDir = Files.createDirectories(tempDir.resolve("migrate"));
+        Files.writeString(cacheDir.resolve("files.json"),
+                "{\"/media/a.strm\":{\"hash\":\"0123456789abcdef0123456789abcdef\",\"added\":\"2024-01-01\"}}");
+
+        // WHEN
+        FilesDb db = new FilesDb(cacheDir.toString());
+        db.load();
+
+        // THEN
+        assertEquals(new FilesDb.Entry("0123456789abcdef0123456789abcdef", "2024-01-01"), db.get("/media/a.strm"));
+        assertTrue(Files.exists(cacheDir.resolve("files.db")));
+        assertFalse(Files.exists(cacheDir.resolve("files.json")));
+        assertNull(db.get("/media/b.strm"));
+    }
+
+}
@@ -0,0 +1,71 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PathIndexTest {
+
+    @Test
+    void testAdd_pathsRoundTrip() {
+        // GIVEN
+        PathIndex index = new PathIndex();
+        List<String> paths = new ArrayList<>();
+        paths.add("/media/p1/live.m3u");
+        paths.add("media/p1/series/Drame/Série 1 (2019)/Season 01/Série 1 (2019) - S01E01.strm");
+        paths.add("root.json");
+        for (int i = 0; i < 5000; i++) {
+            paths.add("media/p1/movies/Category " + (i % 7) + "/Movie " + i + "/Movie " + i + ".strm");
+        }
+
+        // WHEN
+        List<Integer> slots = new ArrayList<>();
+        for (String path : paths) {
+            slots.add(index.add(path));
+        }
+
+        // THEN
+        assertEquals(paths.size(), index.size());
+        for (int i = 0; i < paths.size(); i++) {
+            assertEquals(slots.get(i), index.find(paths.get(i)));
+            assertEquals(slots.get(i), index.add(paths.get(i)));
+            assertEquals(paths.get(i), index.path(slots.get(i)));
+        }
+        assertEquals(-1, index.find("media/p1/movies/Category 0/Movie 0/Movie 0.nfo"));
+        assertEquals(-1, index.find("media/p1/movies/Unknown/Movie 0.strm"));
+        assertNotEquals(index.find("/media/p1/live.m3u"), index.find("media/p1/live.m3u"));
+    }
+
+    @Test
+    void testForEachUnder_directoryAndFile() {
+        // GIVEN
+        PathIndex index = new PathIndex();
+        int episode = index.add("media/series/Show/Season 01/Show - S01E01.strm");
+        int nfo = index.add("media/series/Show/tvshow.nfo");
+        index.add("media/series/Show 2/tvshow.nfo");
+        int movie = index.add("media/movies/Movie/Movie.strm");
+
+        // WHEN
+        List<Integer> underShow = new ArrayList<>();
+        index.forEachUnder("media/series/Show", underShow::add);
+        List<Integer> file = new ArrayList<>();
+        index.forEachUnder("media/movies/Movie/Movie.strm", file::add);
+        List<Integer> missing = new ArrayList<>();
+        index.forEachUnder("media/series/Sho", missing::add);
+
+        // THEN
+        assertEquals(2, underShow.size());
+        assertEquals(Set.of(nfo, episode), new HashSet<>(underShow));
+        assertEquals(List.of(movie), file);
+        assertEquals(List.of(), missing);
+    }
+
+}
@@ -0,0 +1,78 @@
+package uk.humbkr.xtream2jellyfin.filemanager;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class WriteBehindWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testFlush_writesEveryFile() throws IOException {
+        // GIVEN
+        WriteBehindWriter writer = new WriteBehindWriter(2, 4, 3);
+
+        // WHEN
+        for (int i = 0; i < 20; i++) {
+            writer.write(tempDir.resolve("dir" + (i % 3) + "/file" + i + ".txt").toString(), bytes("content" + i), null);
+        }
+        writer.flush();
+
+        // THEN
+        for (int i = 0; i < 20; i++) {
+            assertEquals("content" + i, Files.readString(tempDir.resolve("dir" + (i % 3) + "/file" + i + ".txt")));
+        }
+    }
+
+    @Test
+    void testFlush_lastWriteWins() throws IOException {
+        // GIVEN
+        WriteBehindWriter writer = new WriteBehindWriter(4, 100, 0);
+        String path = tempDir.resolve("same/file.txt").toString();
+
+        // WHEN
+        for (int i = 0; i < 50; i++) {
+            writer.write(path, bytes("version" + i), null);
+        }
+        writer.flush();
+
+        // THEN
+        assertEquals("version49", Files.readString(Path.of(path)));
+    }
+
+    @Test
+    void testWrite_failureReportedPerPath() throws IOException {
+        // GIVEN
+        WriteBehindWriter writer = new WriteBehindWriter(1, 10, 0);
+        Files.createDirectories(tempDir.resolve("fail/blocked"));
+        List<String> failedPaths = new CopyOnWriteArrayList<>();
+        String blockedPath = tempDir.resolve("fail/blocked").toString();
+        String validPath = tempDir.resolve("fail/valid.txt").toString();
+
+        // WHEN
+        writer.write(blockedPath, bytes("content"), (path, e) -> failedPaths.add(path));
+        writer.write(validPath, bytes("content"), (path, e) -> failedPaths.add(path));
+        writer.flush();
+
+        // THEN
+        assertEquals(List.of(blockedPath), failedPaths);
+        assertEquals("content", Files.readString(Path.of(validPath)));
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,132 @@
+package uk.humbkr.xtream2jellyfin.http;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import uk.humbkr.xtream2jellyfin.config.RateLimitConfig;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AimdRateLimiterTest {
+
+    private RateLimitConfig config;
+
+    @BeforeEach
+    void setUp() {
+        config = new RateLimitConfig();
+        config.setInitialRate(10);
+        config.setMinRate(1);
+        config.setMaxRate(12);
+        config.setBurst(5);
+        config.setIncreaseStep(0.5);
+        config.setDecreaseFactor(0.5);
+    }
+
+    @Test
+    void testOnSuccess_increasesAdditivelyUpToMaxRate() {
+        // GIVEN
+        AimdRateLimiter limiter = new AimdRateLimiter(config);
+
+        // WHEN
+        limiter.onSuccess();
+
+        // THEN
+        assertEquals(10.5, limiter.getRate(), 0.001);
+
+        // WHEN
+        for (int i = 0; i < 10; i++) {
+            limiter.onSuccess();
+        }
+
+        // THEN
+        assertEquals(12, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    void testOnThrottle_decreasesMultiplicatively() {
+        // GIVEN
+        AimdRateLimiter limiter = new AimdRateLimiter(config);
+
+        // WHEN
+        limiter.onThrottle(null);
+
+        // THEN
+        assertEquals(5, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    void testOnThrottle_concurrentSignalsCutOnce() {
+        // GIVEN
+        AimdRateLimiter limiter = new AimdRateLimiter(config);
+
+        // WHEN
+        limiter.onThrottle(null);
+        limiter.onThrottle(null);
+        limiter.onThrottle(null);
+
+        // THEN
+        assertEquals(5, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    void testOnThrottle_neverBelowMinRate() {
+        // GIVEN
+        config.setInitialRate(1.5);
+        AimdRateLimiter limiter = new AimdRateLimiter(config);
+
+        // WHEN
+        limiter.onThrottle(null);
+
+        // THEN
+        assertEquals(1, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    void testAcquire_burstIsNotDelayed() throws InterruptedException {
+        // GIVEN
+        AimdRateLimiter limiter = new AimdRateLimiter(config);
+
+        // WHEN
+        long start = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // THEN
+        assertTrue(elapsed < Duration.ofMillis(50).toNanos(), "Burst should not wait, took " + elapsed + "ns");
+    }
+
+    @Test
+    void testAcquire_waitsForRetryAfter() throws InterruptedException {
+        // GIVEN
+        AimdRateLimiter limiter = new AimdRateLimiter(config);
+        limiter.onThrottle(Duration.ofMillis(200));
+
+        // WHEN
+        long start = System.nanoTime();
+        limiter.acquire();
+        long elapsed = System.nanoTime() - start;
+
+        // THEN
+        assertTrue(elapsed >= Duration.ofMillis(150).toNanos(), "Should wait for Retry-After, took " + elapsed + "ns");
+    }
+
+    @Test
+    void testCreate_disabledIsUnlimited() {
+        // GIVEN
+        config.setEnabled(false);
+
+        // WHEN
+        RateLimiter limiter = RateLimiter.create(config);
+
+        // THEN
+        assertSame(RateLimiter.UNLIMITED, limiter);
+    }
+
+}
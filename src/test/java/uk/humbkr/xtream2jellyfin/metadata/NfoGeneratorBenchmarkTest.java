@@ -0,0 +1,91 @@
+package uk.humbkr.xtream2jellyfin.metadata;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Timing of NfoGenerator against the Jackson reference it replaced, on the inputs of a typical provider.
+ * Skipped by default, run with: {@code mvn test -Dtest=NfoGeneratorBenchmarkTest -Dbenchmark=true}
+ * <p>
+ * Each case runs a few rounds of {@link #CALLS} calls per implementation, the first rounds warm up the JIT.
+ * Time and allocated bytes are per call, measured on the calling thread.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class NfoGeneratorBenchmarkTest {
+
+    private static final int CALLS = 200_000;
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private static final int MEASURED_ROUNDS = 2;
+
+    private final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Keeps the generated documents reachable so the calls are not optimized away
+    private long sink;
+
+    @Test
+    void testGenerate_timing() {
+        // GIVEN
+        Map<String, Object> movie = new HashMap<>();
+        movie.put("name", "|FR| Le Grand Film (MULTI) [4K]");
+        movie.put("plot", "Un homme & une femme partent à l'aventure <spoilers> dans un monde où rien n'est " +
+                "ce qu'il semble être. ".repeat(3));
+        movie.put("releaseDate", "2019-05-01");
+        movie.put("rating", "7.4");
+        movie.put("tmdb", "529");
+        movie.put("imdb_id", "tt0111161");
+        movie.put("genre", "Action / Drame / Comédie");
+        movie.put("cast", "Actor One, Actor Two, Actor Three, Actor Four, Actor Five");
+        movie.put("director", "Some Director");
+        movie.put("runtime", "120");
+
+        Map<String, Object> episode = new HashMap<>();
+        episode.put("title", "Série - S01E02 - L'épisode");
+        episode.put("season", 1);
+        episode.put("episode_num", "2");
+        episode.put("info", Map.of("air_date", "2019-05-01", "plot", "Une intrigue courte & tendue.",
+                "rating", 8.1, "crew", "Director"));
+
+        // WHEN / THEN
+        measure("movie", movie, JacksonNfoReference::generateMovieNfo, NfoGenerator::generateMovieNfo);
+        measure("tvshow", movie, JacksonNfoReference::generateTvShowNfo, NfoGenerator::generateTvShowNfo);
+        measure("episode", episode, JacksonNfoReference::generateEpisodeNfo, NfoGenerator::generateEpisodeNfo);
+        assertTrue(sink > 0);
+    }
+
+    private void measure(String label, Map<String, Object> data,
+                         Function<Map<String, Object>, String> reference,
+                         Function<Map<String, Object>, String> generator) {
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            String referenceResult = run(data, reference);
+            String generatorResult = run(data, generator);
+            if (round >= WARMUP_ROUNDS) {
+                System.out.printf("%-8s jackson %s | writer %s%n", label, referenceResult, generatorResult);
+            }
+        }
+    }
+
+    private String run(Map<String, Object> data, Function<Map<String, Object>, String> generate) {
+        long allocatedStart = threadBean.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            sink += generate.apply(data).length();
+        }
+        long nanos = (System.nanoTime() - start) / CALLS;
+        long bytes = (threadBean.getCurrentThreadAllocatedBytes() - allocatedStart) / CALLS;
+
+        return String.format("%6d ns %7d B/op", nanos, bytes);
+    }
+
+}
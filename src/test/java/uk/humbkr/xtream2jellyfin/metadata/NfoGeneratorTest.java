@@ -0,0 +1,151 @@
+package uk.humbkr.xtream2jellyfin.metadata;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class NfoGeneratorTest {
+
+    private static final String[] VALUES = {
+            null, "", "  ", "Simple", "Le Film (MULTI)", "|FR| Movie [4K]", "Movie (2019) [HDR] ",
+            "Série - S01E02 - L'épisode", "A & B < C > D \"quoted\" 'single'", "]]> ]> ] >", "line\nbreak\r\n\ttab",
+            "7.5", "8", " 6.25 ", "NaN", "-Infinity", "1e10", "abc", "120", "-5", "2019-05-01", "2019", "19",
+            "Action / Drame /  / Comédie", "Actor One, Actor Two,, ,Actor Three", " ,  /",
+            "del\u007f \u0085 \u00a0 \u2028 \ufffd \ufffe", "emoji 😀 lone \ud800 end",
+    };
+
+    private static final String[] SERIES_KEYS = {"name", "plot", "releaseDate", "release_date", "rating", "tmdb",
+            "genre", "cast", "director", "episode_run_time"};
+
+    private static final String[] MOVIE_KEYS = {"name", "plot", "releaseDate", "release_date", "rating", "tmdb",
+            "imdb_id", "imdb", "genre", "cast", "director", "runtime"};
+
+    private static final String[] EPISODE_INFO_KEYS = {"air_date", "plot", "rating", "crew"};
+
+    @Test
+    void testGenerate_matchesJacksonOutput() {
+        // GIVEN
+        Random random = new Random(42);
+        List<Map<String, Object>> samples = new ArrayList<>();
+        samples.add(new HashMap<>());
+        for (String value : VALUES) {
+            for (String key : MOVIE_KEYS) {
+                samples.add(single(key, value));
+            }
+        }
+        for (int i = 0; i < 2000; i++) {
+            samples.add(randomSample(random));
+        }
+
+        // WHEN / THEN
+        for (Map<String, Object> sample : samples) {
+            assertEquals(JacksonNfoReference.generateMovieNfo(sample), NfoGenerator.generateMovieNfo(sample));
+            assertEquals(JacksonNfoReference.generateTvShowNfo(sample), NfoGenerator.generateTvShowNfo(sample));
+            assertEquals(JacksonNfoReference.generateEpisodeNfo(sample), NfoGenerator.generateEpisodeNfo(sample));
+        }
+    }
+
+    @Test
+    void testGenerateMovieNfo_missingValuesAndEscaping() {
+        // GIVEN
+        Map<String, Object> movie = new HashMap<>();
+        movie.put("name", "|FR| Tom & Jerry (MULTI)");
+        movie.put("genre", "Animation / Comédie");
+        movie.put("info", Map.of("tmdb", "529", "rating", "7.5"));
+
+        // WHEN
+        String nfo = NfoGenerator.generateMovieNfo(movie);
+
+        // THEN
+        assertEquals("""
+                <movie>
+                  <title>Tom &amp; Jerry</title>
+                  <originaltitle>Tom &amp; Jerry</originaltitle>
+                  <plot/>
+                  <premiered/>
+                  <year/>
+                  <userrating>7.5</userrating>
+                  <uniqueid type="tmdb" default="true">
+                    <value>529</value>
+                  </uniqueid>
+                  <genre>Animation</genre>
+                  <genre>Comédie</genre>
+                  <actor/>
+                  <director/>
+                  <runtime/>
+                </movie>
+                """, nfo);
+    }
+
+    @Test
+    void testGenerateEpisodeNfo_invalidCharacter() {
+        // GIVEN
+        Map<String, Object> episode = new HashMap<>();
+        episode.put("title", "Show - S01E01 - Pilot");
+        episode.put("info", Map.of("plot", "Broken \u0000 plot"));
+
+        // WHEN
+        String nfo = NfoGenerator.generateEpisodeNfo(episode);
+
+        // THEN
+        assertNull(nfo);
+        assertNull(JacksonNfoReference.generateEpisodeNfo(episode));
+    }
+
+    private static Map<String, Object> single(String key, String value) {
+        Map<String, Object> sample = new HashMap<>();
+        sample.put(key, value);
+        return sample;
+    }
+
+    private static Map<String, Object> randomSample(Random random) {
+        Map<String, Object> sample = new HashMap<>();
+        Map<String, Object> info = new HashMap<>();
+        for (String key : MOVIE_KEYS) {
+            putRandom(random, random.nextBoolean() ? sample : info, key);
+        }
+        for (String key : SERIES_KEYS) {
+            putRandom(random, random.nextBoolean() ? sample : info, key);
+        }
+        for (String key : EPISODE_INFO_KEYS) {
+            putRandom(random, info, key);
+        }
+        putRandom(random, sample, "title");
+        if (random.nextInt(4) > 0) {
+            sample.put("season", random.nextInt(3) > 0 ? random.nextInt(30) : "S1");
+            sample.put("episode_num", random.nextInt(3) > 0 ? String.valueOf(random.nextInt(300)) : 1.5);
+            sample.put("rating", random.nextInt(3) > 0 ? random.nextDouble() * 10 : "bad");
+        }
+        if (random.nextBoolean()) {
+            sample.put("info", info);
+        }
+        return sample;
+    }
+
+    private static void putRandom(Random random, Map<String, Object> map, String key) {
+        if (random.nextInt(3) == 0) {
+            return;
+        }
+        map.put(key, random.nextInt(4) == 0 ? randomText(random) : VALUES[1 + random.nextInt(VALUES.length - 1)]);
+    }
+
+    private static String randomText(Random random) {
+        String alphabet = " ,/()[]|&<>]\"'\t\n\réà \u0085 😀abcXYZ0123456789.-";
+        int length = random.nextInt(10) == 0 ? 5000 + random.nextInt(5000) : random.nextInt(40);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,115 @@
+package uk.humbkr.xtream2jellyfin.pipeline;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class PipelineStageTest {
+
+    @Test
+    void testAwaitIdle_waitsForAllTasks() {
+        // GIVEN
+        AtomicInteger done = new AtomicInteger();
+
+        try (PipelineStage stage = new PipelineStage("test", 2, 4)) {
+            // WHEN
+            for (int i = 0; i < 20; i++) {
+                stage.submit(done::incrementAndGet);
+            }
+            stage.awaitIdle();
+
+            // THEN
+            assertEquals(20, done.get());
+            assertEquals(20, stage.getTasks());
+        }
+    }
+
+    @Test
+    void testSubmit_blocksWhileQueueIsFull() throws InterruptedException {
+        // GIVEN
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch submitted = new CountDownLatch(1);
+
+        try (PipelineStage stage = new PipelineStage("test", 1, 1)) {
+            stage.submit(() -> await(release));
+            stage.submit(() -> await(release));
+
+            // WHEN
+            Thread producer = Thread.ofVirtual().start(() -> {
+                stage.submit(() -> {
+                });
+                submitted.countDown();
+            });
+
+            // THEN
+            assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+            release.countDown();
+            assertTrue(submitted.await(5, TimeUnit.SECONDS));
+            producer.join();
+            stage.awaitIdle();
+            assertEquals(3, stage.getTasks());
+        }
+    }
+
+    @Test
+    void testSubmit_failingTaskDoesNotStopStage() {
+        // GIVEN
+        AtomicInteger done = new AtomicInteger();
+
+        try (PipelineStage stage = new PipelineStage("test", 1, 1)) {
+            // WHEN
+            stage.submit(() -> {
+                throw new IllegalStateException("failure");
+            });
+            stage.submit(done::incrementAndGet);
+            stage.awaitIdle();
+
+            // THEN
+            assertEquals(1, done.get());
+        }
+    }
+
+    @Test
+    void testClose_waitsForQueuedTasks() {
+        // GIVEN
+        AtomicInteger done = new AtomicInteger();
+        PipelineStage stage = new PipelineStage("test", 1, 4);
+        for (int i = 0; i < 5; i++) {
+            stage.submit(() -> {
+                sleep(20);
+                done.incrementAndGet();
+            });
+        }
+
+        // WHEN
+        stage.close();
+
+        // THEN
+        assertEquals(5, done.get());
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package uk.humbkr.xtream2jellyfin.scheduler;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SyncWindowTest {
+
+    // A Monday
+    private static final ZonedDateTime MONDAY = ZonedDateTime.of(2024, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Test
+    void testContains_dailyWindow() {
+        // GIVEN
+        SyncWindow window = SyncWindow.parse("01:00-06:00");
+
+        // WHEN / THEN
+        assertTrue(window.contains(MONDAY.withHour(1)));
+        assertTrue(window.contains(MONDAY.withHour(5).withMinute(59)));
+        assertFalse(window.contains(MONDAY.withHour(6)));
+        assertFalse(window.contains(MONDAY.withHour(0).withMinute(59)));
+    }
+
+    @Test
+    void testContains_overnightWindowBelongsToStartDay() {
+        // GIVEN
+        SyncWindow window = SyncWindow.parse("fri 22:00-02:00");
+
+        // WHEN / THEN
+        assertTrue(window.contains(MONDAY.plusDays(4).withHour(23)));
+        assertTrue(window.contains(MONDAY.plusDays(5).withHour(1)));
+        assertFalse(window.contains(MONDAY.plusDays(5).withHour(23)));
+        assertFalse(window.contains(MONDAY.plusDays(4).withHour(1)));
+    }
+
+    @Test
+    void testNextOpening_skipsExcludedDays() {
+        // GIVEN
+        SyncWindow window = SyncWindow.parse("sat,sun 08:00-12:00");
+
+        // WHEN
+        ZonedDateTime opening = window.nextOpening(MONDAY.withHour(9));
+
+        // THEN
+        assertEquals(MONDAY.plusDays(5).withHour(8), opening);
+    }
+
+    @Test
+    void testParse_invalidWindow() {
+        assertThrows(IllegalArgumentException.class, () -> SyncWindow.parse("01:00"));
+        assertThrows(IllegalArgumentException.class, () -> SyncWindow.parse("xyz 01:00-02:00"));
+        assertThrows(IllegalArgumentException.class, () -> SyncWindow.parse("25:00-02:00"));
+    }
+
+    @Test
+    void testPlanNextRun_movedIntoWindow() {
+        // GIVEN
+        ProviderTask task = new ProviderTask("p1", () -> true, Duration.ofHours(6),
+                List.of(SyncWindow.parse("01:00-06:00")), Duration.ZERO, ZoneOffset.UTC);
+        Instant previousRun = task.planFirstRun(MONDAY.withHour(2).toInstant());
+
+        // WHEN
+        Instant nextRun = task.planNextRun(previousRun);
+
+        // THEN
+        assertEquals(MONDAY.plusDays(1).withHour(1).toInstant(), nextRun);
+    }
+
+    @Test
+    void testPlanNextRun_jitterDoesNotAccumulate() {
+        // GIVEN
+        Duration jitter = Duration.ofMinutes(10);
+        ProviderTask task = new ProviderTask("p1", () -> true, Duration.ofHours(1), List.of(), jitter, ZoneOffset.UTC);
+        Instant start = MONDAY.toInstant();
+        Instant run = task.planFirstRun(start);
+
+        for (int i = 1; i <= 100; i++) {
+            // WHEN
+            run = task.planNextRun(run);
+
+            // THEN
+            Instant base = start.plus(Duration.ofHours(i));
+            assertFalse(run.isBefore(base), "Run " + i + ": " + run);
+            assertFalse(run.isAfter(base.plus(jitter)), "Run " + i + ": " + run);
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package uk.humbkr.xtream2jellyfin.streamhandler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import uk.humbkr.xtream2jellyfin.common.Constants;
+import uk.humbkr.xtream2jellyfin.config.EpgSettings;
+import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
+import uk.humbkr.xtream2jellyfin.config.MediaSettings;
+import uk.humbkr.xtream2jellyfin.config.RateLimitConfig;
+import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
+import uk.humbkr.xtream2jellyfin.filemanager.CachedFileManager;
+import uk.humbkr.xtream2jellyfin.filemanager.FileManager;
+import uk.humbkr.xtream2jellyfin.http.ConditionalCache;
+import uk.humbkr.xtream2jellyfin.http.RateLimiter;
+import uk.humbkr.xtream2jellyfin.http.XtreamTransport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class LiveStreamsHandlerTest {
+
+    private static final String PROVIDER_NAME = "live-handler-test";
+
+    private static final String CATEGORIES = "[{\"category_id\":\"1\",\"category_name\":\"News\"}]";
+
+    private static final String STREAMS = "[{\"name\":\"News One\",\"stream_id\":201,\"category_id\":\"1\"," +
+            "\"epg_channel_id\":\"news.one\",\"stream_type\":\"live\"}]";
+
+    private static final String EPG = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<tv>" +
+            "<channel id=\"news.one\"><display-name>News One</display-name></channel>" +
+            "<programme start=\"20000101000000 +0000\" stop=\"20000101010000 +0000\" channel=\"news.one\">" +
+            "<title>Old News</title></programme>" +
+            "<programme start=\"20990101000000 +0000\" stop=\"20990101010000 +0000\" channel=\"news.one\">" +
+            "<title>Future News</title></programme>" +
+            "</tv>";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+
+    private final AtomicInteger guideDownloads = new AtomicInteger();
+
+    private final AtomicInteger notModifiedGuides = new AtomicInteger();
+
+    @BeforeAll
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/player_api.php", exchange -> handle(exchange, false));
+        server.createContext("/xmltv.php", exchange -> handle(exchange, true));
+        server.start();
+    }
+
+    @AfterAll
+    void stopServer() throws IOException {
+        server.stop(0);
+        deleteProviderCache();
+    }
+
+    @BeforeEach
+    void resetProvider() throws IOException {
+        deleteProviderCache();
+        guideDownloads.set(0);
+        notModifiedGuides.set(0);
+    }
+
+    @Test
+    void testProcess_notModifiedGuideKept() throws IOException {
+        // GIVEN
+        Path mediaDir = tempDir.resolve("kept");
+        FileManager fileManager = new CachedFileManager(mediaDir.toString(), tempDir.resolve("kept-files").toString());
+        sync(fileManager, mediaDir, 0);
+
+        // WHEN
+        sync(fileManager, mediaDir, 0);
+
+        // THEN
+        assertEquals(1, guideDownloads.get());
+        assertEquals(1, notModifiedGuides.get());
+        assertTrue(readGuide(mediaDir).contains("Old News"));
+    }
+
+    @Test
+    void testProcess_guideWithTimeWindowDownloadedAgain() throws IOException {
+        // GIVEN
+        Path mediaDir = tempDir.resolve("window");
+        FileManager fileManager = new CachedFileManager(mediaDir.toString(), tempDir.resolve("window-files").toString());
+        sync(fileManager, mediaDir, 24);
+
+        // WHEN
+        sync(fileManager, mediaDir, 24);
+
+        // THEN
+        assertEquals(2, guideDownloads.get());
+        assertEquals(0, notModifiedGuides.get());
+        String guide = readGuide(mediaDir);
+        assertTrue(!guide.contains("Old News") && guide.contains("Future News"));
+    }
+
+    private void sync(FileManager fileManager, Path mediaDir, int pastHours) {
+        // Guide channels are not filtered, so only the time window decides whether it can be kept
+        EpgSettings epg = new EpgSettings();
+        epg.setFilterChannels(false);
+        epg.setPastHours(pastHours);
+
+        MediaSettings live = new MediaSettings();
+        live.setEnabled(true);
+        live.setEpg(epg);
+
+        XtreamProviderConfig providerConfig = new XtreamProviderConfig();
+        providerConfig.setName(PROVIDER_NAME);
+        providerConfig.setUrl("http://localhost:" + server.getAddress().getPort());
+        providerConfig.setUsername("user");
+        providerConfig.setPassword("pass");
+        providerConfig.setLive(live);
+
+        GlobalSettings globalSettings = new GlobalSettings();
+        globalSettings.setMediaDir(mediaDir.toString());
+
+        XtreamTransport transport = new XtreamTransport(PROVIDER_NAME, RateLimiter.create(new RateLimitConfig()),
+                new ConditionalCache(getProviderCacheDir().toString()));
+        LiveStreamsHandler handler = new LiveStreamsHandler(providerConfig, fileManager, transport, globalSettings);
+
+        fileManager.initialize();
+        handler.process();
+        fileManager.complete();
+    }
+
+    private void handle(HttpExchange exchange, boolean guide) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        String body = guide ? EPG
+                : query.contains("action=get_live_categories") ? CATEGORIES
+                : query.contains("action=get_live_streams") ? STREAMS : "[]";
+        String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            if (guide) {
+                notModifiedGuides.incrementAndGet();
+            }
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        if (guide) {
+            guideDownloads.incrementAndGet();
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", guide ? "application/xml" : "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private String readGuide(Path mediaDir) throws IOException {
+        return Files.readString(mediaDir.resolve(PROVIDER_NAME).resolve("live").resolve("epg.xml"));
+    }
+
+    private Path getProviderCacheDir() {
+        return Paths.get(Constants.CACHE_DIR, PROVIDER_NAME);
+    }
+
+    private void deleteProviderCache() throws IOException {
+        // Handlers keep their stream index under the working directory
+        Path cacheDir = getProviderCacheDir();
+        if (Files.exists(cacheDir)) {
+            try (Stream<Path> files = Files.walk(cacheDir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Path rootCacheDir = cacheDir.getParent();
+        try (Stream<Path> entries = Files.exists(rootCacheDir) ? Files.list(rootCacheDir) : Stream.empty()) {
+            if (Files.exists(rootCacheDir) && entries.findAny().isEmpty()) {
+                Files.delete(rootCacheDir);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package uk.humbkr.xtream2jellyfin.streamhandler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import uk.humbkr.xtream2jellyfin.common.Constants;
+import uk.humbkr.xtream2jellyfin.config.GlobalSettings;
+import uk.humbkr.xtream2jellyfin.config.MediaSettings;
+import uk.humbkr.xtream2jellyfin.config.RateLimitConfig;
+import uk.humbkr.xtream2jellyfin.config.XtreamProviderConfig;
+import uk.humbkr.xtream2jellyfin.filemanager.CachedFileManager;
+import uk.humbkr.xtream2jellyfin.filemanager.FileManager;
+import uk.humbkr.xtream2jellyfin.http.ConditionalCache;
+import uk.humbkr.xtream2jellyfin.http.RateLimiter;
+import uk.humbkr.xtream2jellyfin.http.XtreamTransport;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class MoviesStreamsHandlerTest {
+
+    private static final String PROVIDER_NAME = "movies-handler-test";
+
+    private static final String CATEGORIES = "[{\"category_id\":\"1\",\"category_name\":\"Action\"}]";
+
+    private static final String STREAMS = "[" +
+            "{\"name\":\"First Movie\",\"stream_id\":101,\"category_id\":\"1\",\"added\":\"1700000000\"," +
+            "\"container_extension\":\"mkv\",\"tmdb\":\"501\",\"releaseDate\":\"2020-01-01\"}," +
+            "{\"name\":\"Second Movie\",\"stream_id\":102,\"category_id\":\"1\",\"added\":\"1700000000\"," +
+            "\"container_extension\":\"mkv\",\"tmdb\":\"502\",\"releaseDate\":\"2021-01-01\"}]";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+
+    private final AtomicInteger notModifiedLists = new AtomicInteger();
+
+    @BeforeAll
+    void startServer() throws IOException {
+        deleteProviderCache();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/player_api.php", this::handle);
+        server.start();
+    }
+
+    @AfterAll
+    void stopServer() throws IOException {
+        server.stop(0);
+        deleteProviderCache();
+    }
+
+    @Test
+    void testProcess_notModifiedListRebuiltWhenSettingsChange() throws IOException {
+        // GIVEN
+        Path mediaDir = tempDir.resolve("media");
+        FileManager fileManager = new CachedFileManager(mediaDir.toString(), tempDir.resolve("files").toString());
+        sync(fileManager, mediaDir, true);
+        assertEquals(List.of("Action/First Movie (2020) [tmdbid-501]/First Movie (2020) [tmdbid-501].strm",
+                "Action/Second Movie (2021) [tmdbid-502]/Second Movie (2021) [tmdbid-502].strm"), listStreams(mediaDir));
+
+        // WHEN
+        sync(fileManager, mediaDir, false);
+
+        // THEN
+        assertTrue(notModifiedLists.get() > 0);
+        assertEquals(List.of("First Movie (2020) [tmdbid-501]/First Movie (2020) [tmdbid-501].strm",
+                "Second Movie (2021) [tmdbid-502]/Second Movie (2021) [tmdbid-502].strm"), listStreams(mediaDir));
+    }
+
+    private void sync(FileManager fileManager, Path mediaDir, boolean categoryFolder) {
+        MediaSettings movies = new MediaSettings();
+        movies.setEnabled(true);
+        movies.setCategoryFolder(categoryFolder);
+
+        XtreamProviderConfig providerConfig = new XtreamProviderConfig();
+        providerConfig.setName(PROVIDER_NAME);
+        providerConfig.setUrl("http://localhost:" + server.getAddress().getPort());
+        providerConfig.setUsername("user");
+        providerConfig.setPassword("pass");
+        providerConfig.setMovies(movies);
+
+        GlobalSettings globalSettings = new GlobalSettings();
+        globalSettings.setMediaDir(mediaDir.toString());
+        globalSettings.setWriteMetadataNfo(false);
+
+        // A new transport and handler, as after a restart with the new settings
+        XtreamTransport transport = new XtreamTransport(PROVIDER_NAME, RateLimiter.create(new RateLimitConfig()),
+                new ConditionalCache(getProviderCacheDir().toString()));
+        MoviesStreamsHandler handler = new MoviesStreamsHandler(providerConfig, fileManager, transport, globalSettings);
+
+        fileManager.initialize();
+        handler.process();
+        fileManager.complete();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        String body = query.contains("action=get_vod_categories") ? CATEGORIES
+                : query.contains("action=get_vod_streams") ? STREAMS : "[]";
+        String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+
+        exchange.getResponseHeaders().add("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            if (body.equals(STREAMS)) {
+                notModifiedLists.incrementAndGet();
+            }
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private List<String> listStreams(Path mediaDir) throws IOException {
+        Path moviesDir = mediaDir.resolve(PROVIDER_NAME).resolve("movies");
+        try (Stream<Path> files = Files.walk(moviesDir)) {
+            return files.filter(file -> file.toString().endsWith(".strm"))
+                    .map(file -> moviesDir.relativize(file).toString())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path getProviderCacheDir() {
+        return Paths.get(Constants.CACHE_DIR, PROVIDER_NAME);
+    }
+
+    private void deleteProviderCache() throws IOException {
+        // Handlers keep their stream index under the working directory
+        Path cacheDir = getProviderCacheDir();
+        if (Files.exists(cacheDir)) {
+            try (Stream<Path> files = Files.walk(cacheDir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+        Path rootCacheDir = cacheDir.getParent();
+        try (Stream<Path> entries = Files.exists(rootCacheDir) ? Files.list(rootCacheDir) : Stream.empty()) {
+            if (Files.exists(rootCacheDir) && entries.findAny().isEmpty()) {
+                Files.delete(rootCacheDir);
+            }
+        }
+    }
+
+}
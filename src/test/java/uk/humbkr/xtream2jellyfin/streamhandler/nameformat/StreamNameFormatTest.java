@@ -281,6 +281,51 @@ class StreamNameFormatTest {
         assertEquals("Test Movie (2024)", result);
     }
 
+    @Test
+    void testFormat_customTemplateOrder() {
+        // GIVEN
+        StreamNameFormat reorderedFormatter = new StreamNameFormat("${year} - ${name} {${externalId}} $5", null);
+        StreamNameFormatContext context = StreamNameFormatContext.builder()
+                .year("2024")
+                .externalId("12345")
+                .build();
+
+        // WHEN
+        String result = reorderedFormatter.format("Test Movie", context);
+
+        // THEN
+        assertEquals("2024 - Test Movie {12345} $5", result);
+    }
+
+    @Test
+    void testFormat_templateWithEscapeAndUnknownPlaceholder() {
+        // GIVEN
+        StreamNameFormat escapingFormatter = new StreamNameFormat("$${year} ${name} ${quality} ${year:-none}", null);
+        StreamNameFormatContext context = StreamNameFormatContext.builder().build();
+
+        // WHEN
+        String result = escapingFormatter.format("Test Movie", context);
+
+        // THEN
+        assertEquals("${year} Test Movie ${quality}", result);
+    }
+
+    @Test
+    void testFormat_placeholderInName() {
+        // GIVEN
+        StreamNameFormatContext context = StreamNameFormatContext.builder()
+                .year("2024")
+                .build();
+
+        // WHEN
+        String substituted = formatter.format("Ca$h ${year}", context);
+        String escaped = formatter.format("Ca$h $${year}", context);
+
+        // THEN
+        assertEquals("Ca$h 2024 (2024)", substituted);
+        assertEquals("Ca$h ${year} (2024)", escaped);
+    }
+
     @Test
     void testFormat_regexWithSpecialCharacters() {
         // GIVEN